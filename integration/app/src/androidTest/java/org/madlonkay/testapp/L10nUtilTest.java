@@ -5,9 +5,6 @@ import android.support.test.runner.AndroidJUnit4;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Locale;
 
 import static org.junit.Assert.assertFalse;
@@ -16,29 +13,28 @@ import static org.junit.Assert.assertTrue;
 @RunWith(AndroidJUnit4.class)
 public class L10nUtilTest {
 
+    // Supported: fr-FR (default), ja, es-MX, b+sr+Latn, ko (secret), de (lib)
     @Test
     public void isSupportedLocale() {
-        {
-            List<Locale> supported = Collections.singletonList(Locale.forLanguageTag("en"));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en"), supported));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en-US"), supported));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en-UK"), supported));
-        }
-        {
-            List<Locale> supported = Arrays.asList(Locale.forLanguageTag("es"), Locale.forLanguageTag("en"));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en"), supported));
-        }
-        {
-            List<Locale> supported = Collections.singletonList(Locale.forLanguageTag("zh-CN"));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh"), supported));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh-Hans"), supported));
-            assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh-Hant"), supported));
-        }
-        {
-            List<Locale> supported = Collections.singletonList(Locale.forLanguageTag("zh-HK"));
-            assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh"), supported));
-            assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh-Hans"), supported));
-            assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh-Hant"), supported));
-        }
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("fr")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("fr-FR")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("fr-CA")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("ja")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("es-ES")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("ko-KR")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("de-AT")));
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en")));
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("en-US")));
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("zh-CN")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void isSupportedLocaleByScript() {
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("sr-Latn")));
+        assertTrue(L10nUtil.isSupportedLocale(Locale.forLanguageTag("sr-Latn-RS")));
+        // Serbian is most likely written in Cyrillic
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("sr")));
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("sr-Cyrl")));
+        assertFalse(L10nUtil.isSupportedLocale(Locale.forLanguageTag("ja-Latn")));
+    }
+}
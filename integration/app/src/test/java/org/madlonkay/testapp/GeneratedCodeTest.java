@@ -4,6 +4,7 @@ import android.support.v7.app.AppCompatActivity;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class GeneratedCodeTest {
@@ -11,4 +12,9 @@ public class GeneratedCodeTest {
     public void activityClass() {
         assertEquals(AppCompatActivity.class, L10nFixActivity.class.getSuperclass());
     }
+
+    @Test
+    public void supportedLocales() {
+        assertArrayEquals(BuildConfig.SUPPORTED_LOCALES, L10nFixLocales.SUPPORTED_LOCALES);
+    }
 }
@@ -0,0 +1,144 @@
+package com.madlonkay.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the filesystem locale scan over a synthetic multi-module project in a temporary directory.
+ * <p>
+ * The tree has {@code modules} modules, each with a {@code res} directory holding a default and {@code locales}
+ * localized {@code values} directories, plus non-values resource directories and Java sources, for roughly
+ * {@code files} files in total. Run with {@code ./gradlew jmh -Pjmh.include=LocaleScanBenchmark}; change the tree
+ * sizes via the {@link Param} values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LocaleScanBenchmark {
+
+    private static final String[] LOCALES = {
+            "ja", "ko", "de", "fr-rFR", "es-rMX", "b+sr+Latn", "cs", "pt-rBR", "zh-rCN", "zh-rTW", "it", "nl",
+            "ru", "pl", "tr", "sv", "da", "fi", "nb", "b+es+419",
+    };
+    private static final String[] OTHER_RES_DIRECTORIES = {
+            "layout", "layout-land", "drawable", "drawable-hdpi", "drawable-xhdpi", "mipmap-xxhdpi", "values-v21",
+    };
+
+    @Param({"10"})
+    public int modules;
+
+    @Param({"10"})
+    public int locales;
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private Path root;
+    private Set<Path> projectDirs;
+    private LocaleScanner.Result cachedResult;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("l10nFixScanBenchmark").toRealPath();
+        projectDirs = new HashSet<>();
+        projectDirs.add(root);
+        int filesPerModule = Math.max(1, files / modules);
+        for (int m = 0; m < modules; m++) {
+            Path module = Files.createDirectories(root.resolve("module" + m));
+            projectDirs.add(module);
+            createModule(module, filesPerModule);
+        }
+        cachedResult = LocaleScanner.scan(root, Collections.singleton(root));
+    }
+
+    private void createModule(Path module, int fileCount) throws IOException {
+        Path res = Files.createDirectories(module.resolve("src/main/res"));
+        Path java = Files.createDirectories(module.resolve("src/main/java/com/example"));
+        int created = 0;
+        Files.createDirectories(res.resolve("values"));
+        created += createFile(res.resolve("values/strings.xml"));
+        for (int l = 0; l < Math.min(locales, LOCALES.length); l++) {
+            Path dir = Files.createDirectories(res.resolve("values-" + LOCALES[l]));
+            created += createFile(dir.resolve("strings.xml"));
+        }
+        // Fill the remainder with other resources and sources, which the scan should never need to visit
+        for (int i = 0; created < fileCount; i++) {
+            Path dir;
+            if (i % 2 == 0) {
+                dir = Files.createDirectories(res.resolve(OTHER_RES_DIRECTORIES[i / 2 % OTHER_RES_DIRECTORIES.length]));
+            } else {
+                dir = Files.createDirectories(java.resolve("pkg" + (i / 200)));
+            }
+            created += createFile(dir.resolve("file" + i + (i % 2 == 0 ? ".xml" : ".java")));
+        }
+    }
+
+    private static int createFile(Path file) throws IOException {
+        Files.write(file, new byte[0]);
+        return 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * A scan of the whole tree as a single project.
+     */
+    @Benchmark
+    public Map<Path, Set<String>> scanSingleProject() {
+        return LocaleScanner.scan(root, Collections.singleton(root)).getResDirectories();
+    }
+
+    /**
+     * One scan per module, in parallel, as {@code resolveLocalesFileSystem} does for a multi-project build.
+     */
+    @Benchmark
+    public long scanProjectsParallel() {
+        return projectDirs.parallelStream()
+                .map(dir -> LocaleScanner.scan(dir, projectDirs))
+                .mapToLong(result -> result.getResDirectories().size())
+                .sum();
+    }
+
+    /**
+     * Validating a cached scan, as done when the scan cache is enabled.
+     */
+    @Benchmark
+    public boolean checkCachedScan() {
+        return cachedResult.isCurrent();
+    }
+}
@@ -0,0 +1,85 @@
+package com.madlonkay.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the qualifier handling in {@link Util}. Each benchmark processes a fixed mix of typical inputs,
+ * both matching and not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilBenchmark {
+
+    private static final String[] QUALIFIERS = {
+            "en", "es-rMX", "b+sr+Latn", "fil", "b+es+419", "v21", "hdpi", "land", "sw600dp", "", "fooo",
+    };
+
+    private static final String[] DIRECTORY_NAMES = {
+            "values", "values-ja", "values-es-rMX", "values-b+sr+Latn", "values-ja-v21", "values-en-rUS-land",
+            "values-v21", "values-night", "values-sw600dp-v13", "layout", "drawable-hdpi",
+    };
+
+    private static final File[] FILES = {
+            new File("/project/res/values/strings.xml"),
+            new File("/project/res/values-ja/strings.xml"),
+            new File("/project/res/values-es-rMX/strings.xml"),
+            new File("/project/res/values-b+sr+Latn/strings.xml"),
+            new File("/project/res/values-v21/styles.xml"),
+            new File("/project/res/layout/activity_main.xml"),
+    };
+
+    private static final String[] LOCALES = {
+            "ja", "es-rMX", "b+sr+Latn", "fr-rFR", "b+es+419", "zh-rTW",
+    };
+
+    private static final List<String> BCP47_LOCALES = Arrays.asList(
+            "cs", "de", "en", "es-MX", "fr-FR", "ja", "ko", "sr-Latn");
+
+    @Benchmark
+    public void isLocaleQualifier(Blackhole bh) {
+        for (String qualifier : QUALIFIERS) {
+            bh.consume(Util.isLocaleQualifier(qualifier));
+        }
+    }
+
+    @Benchmark
+    public void resolveLocaleDirectory(Blackhole bh) {
+        for (String name : DIRECTORY_NAMES) {
+            bh.consume(Util.resolveLocaleDirectory(name));
+        }
+    }
+
+    /**
+     * Includes the {@link File#isDirectory()} check that {@link Util#resolveLocale(File)} makes on every call.
+     */
+    @Benchmark
+    public void resolveLocale(Blackhole bh) {
+        for (File file : FILES) {
+            bh.consume(Util.resolveLocale(file));
+        }
+    }
+
+    @Benchmark
+    public void toBcp47(Blackhole bh) {
+        for (String locale : LOCALES) {
+            bh.consume(Util.toBcp47(locale));
+        }
+    }
+
+    @Benchmark
+    public String toArrayLiteral() {
+        return Util.toArrayLiteral(BCP47_LOCALES);
+    }
+}
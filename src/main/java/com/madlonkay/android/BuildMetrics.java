@@ -0,0 +1,246 @@
+package com.madlonkay.android;
+
+import org.gradle.BuildResult;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.execution.TaskExecutionListener;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.TaskState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Build-scoped timings and counters of the plugin's work, written as JSON when the build finishes.
+ * <p>
+ * Like {@link LocaleService}, one instance exists per {@link Gradle} build invocation. When metrics are disabled
+ * every build gets a shared instance whose methods return immediately without reading the clock, so instrumented
+ * code costs next to nothing. All methods are safe to call concurrently.
+ * <p>
+ * Time is recorded per phase and scope (e.g. a project, or a project's variant), along with the number of calls.
+ * The plugin's tasks are timed by a task execution listener, with the task path as the scope. Such listeners aren't
+ * supported by Gradle's configuration cache, so metrics must stay off in builds that use it.
+ */
+class BuildMetrics {
+
+    static final String PHASE_SCAN = "scan";
+    static final String PHASE_PROJECT_SCAN = "projectScan";
+    static final String PHASE_AAR_SCAN = "aarScan";
+    static final String PHASE_COVERAGE = "coverage";
+    static final String PHASE_RES_CONFIGS = "resConfigs";
+    static final String PHASE_VERIFICATION = "verification";
+    static final String PHASE_SUPPORT_LIBRARY = "supportLibraryDetection";
+    static final String PHASE_CODE_GENERATION = "codeGeneration";
+    static final String PHASE_FOOTPRINT_REPORT = "footprintReport";
+    static final String PHASE_APK_VERIFICATION = "apkVerification";
+
+    /**
+     * The scope of work done once for the whole build.
+     */
+    static final String SCOPE_BUILD = "(build)";
+
+    static final String COUNTER_PROJECTS_SCANNED = "projectsScanned";
+    static final String COUNTER_PROJECTS_FROM_CACHE = "projectsFromCache";
+    static final String COUNTER_PROJECTS_FROM_WATCH_INDEX = "projectsFromWatchIndex";
+    static final String COUNTER_DIRECTORIES_VISITED = "directoriesVisited";
+    static final String COUNTER_FILES_EXAMINED = "filesExamined";
+    static final String COUNTER_LOCALES_FOUND = "localesFound";
+    static final String COUNTER_AARS_EXAMINED = "aarsExamined";
+    static final String COUNTER_TASKS_SKIPPED = "tasksSkipped";
+
+    private static final Logger LOGGER = Logging.getLogger(BuildMetrics.class);
+    private static final Map<Gradle, BuildMetrics> INSTANCES = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final BuildMetrics DISABLED = new BuildMetrics(false);
+
+    private final boolean enabled;
+    private final Map<String, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<Task, Long> taskStarts = new ConcurrentHashMap<>();
+    private final Instant startTime = Instant.now();
+
+    BuildMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param project    Any project of the build
+     * @param enabled    Whether to record metrics; only the first call in a build decides
+     * @param reportFile The file to which the metrics are written at the end of the build
+     * @return The metrics of the build that the project belongs to
+     */
+    static BuildMetrics get(Project project, boolean enabled, File reportFile) {
+        return INSTANCES.computeIfAbsent(project.getGradle(), gradle -> {
+            if (!enabled) {
+                return DISABLED;
+            }
+            BuildMetrics metrics = new BuildMetrics(true);
+            gradle.getTaskGraph().addTaskExecutionListener(metrics.new TaskTimer());
+            gradle.buildFinished(result -> metrics.write(reportFile, result));
+            return metrics;
+        });
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return A start time to pass to {@link #stop(String, String, long)}
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time elapsed since {@code start} against a phase and scope.
+     */
+    void stop(String phase, String scope, long start) {
+        if (!enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        timers.computeIfAbsent(phase, p -> new ConcurrentHashMap<>())
+                .computeIfAbsent(scope, s -> new Timer())
+                .add(elapsed);
+    }
+
+    void count(String counter, long delta) {
+        if (!enabled) {
+            return;
+        }
+        counters.computeIfAbsent(counter, c -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @return A JSON-compatible model of the metrics: the phases with their totals and scopes, and the counters
+     */
+    Map<String, Object> toModel() {
+        List<Map<String, Object>> phases = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Timer>> phaseEntry : new TreeMap<>(timers).entrySet()) {
+            long totalNanos = 0;
+            long totalCalls = 0;
+            List<Map<String, Object>> scopes = new ArrayList<>();
+            for (Map.Entry<String, Timer> scopeEntry : new TreeMap<>(phaseEntry.getValue()).entrySet()) {
+                Timer timer = scopeEntry.getValue();
+                long nanos = timer.nanos.get();
+                long calls = timer.calls.get();
+                totalNanos += nanos;
+                totalCalls += calls;
+                Map<String, Object> scope = new LinkedHashMap<>();
+                scope.put("scope", scopeEntry.getKey());
+                scope.put("calls", calls);
+                scope.put("millis", toMillis(nanos));
+                scopes.add(scope);
+            }
+            Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("phase", phaseEntry.getKey());
+            phase.put("calls", totalCalls);
+            phase.put("millis", toMillis(totalNanos));
+            phase.put("scopes", scopes);
+            phases.add(phase);
+        }
+        Map<String, Object> counterValues = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("startTime", startTime.toString());
+        model.put("phases", phases);
+        model.put("counters", counterValues);
+        return model;
+    }
+
+    private void write(File reportFile, BuildResult result) {
+        Map<String, Object> build = new LinkedHashMap<>();
+        build.put("gradleVersion", result.getGradle() == null ? null : result.getGradle().getGradleVersion());
+        build.put("tasks", result.getGradle() == null ? Collections.emptyList()
+                : result.getGradle().getStartParameter().getTaskNames());
+        build.put("failed", result.getFailure() != null);
+        write(reportFile, build);
+    }
+
+    /**
+     * Write the report: the metrics model (see {@link #toModel()}) preceded by the specified details of the build.
+     * Failures are logged rather than thrown, so that they can't fail the build.
+     */
+    void write(File reportFile, Map<String, Object> build) {
+        Map<String, Object> model = new LinkedHashMap<>(build);
+        model.putAll(toModel());
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            Files.write(reportFile.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(model))
+                    .getBytes(StandardCharsets.UTF_8));
+            LOGGER.info("Wrote l10nFix metrics to {}", reportFile);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not write l10nFix metrics {}: {}", reportFile, ex.getMessage());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static final class Timer {
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong calls = new AtomicLong();
+
+        void add(long elapsed) {
+            nanos.addAndGet(elapsed);
+            calls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Times the execution of the plugin's tasks.
+     */
+    private final class TaskTimer implements TaskExecutionListener {
+
+        @Override
+        public void beforeExecute(Task task) {
+            if (phaseOf(task) != null) {
+                taskStarts.put(task, System.nanoTime());
+            }
+        }
+
+        @Override
+        public void afterExecute(Task task, TaskState state) {
+            Long start = taskStarts.remove(task);
+            if (start == null) {
+                return;
+            }
+            if (state.getSkipped()) {
+                count(COUNTER_TASKS_SKIPPED, 1);
+            } else {
+                stop(phaseOf(task), task.getPath(), start);
+            }
+        }
+
+        private String phaseOf(Task task) {
+            if (task instanceof GenerateCodeTask) {
+                return PHASE_CODE_GENERATION;
+            } else if (task instanceof LocaleFootprintTask) {
+                return PHASE_FOOTPRINT_REPORT;
+            } else if (task instanceof VerifyApkLocalesTask) {
+                return PHASE_APK_VERIFICATION;
+            }
+            return null;
+        }
+    }
+}
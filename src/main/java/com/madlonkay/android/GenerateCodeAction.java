@@ -0,0 +1,371 @@
+package com.madlonkay.android;
+
+import com.ibm.icu.util.ULocale;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Renders the runtime-fix classes for one set of generation inputs and syncs them into an output directory.
+ * <p>
+ * This is submitted to the Worker API by {@link GenerateCodeTask} so that generation for different variants (and
+ * projects) can proceed concurrently. It only holds plain parameters, and shares no state with other work items.
+ */
+public class GenerateCodeAction implements Runnable {
+
+    private static final Logger LOGGER = Logging.getLogger(GenerateCodeAction.class);
+
+    /**
+     * Languages whose codes changed, mapped to the other code. Android's {@link Locale} reports the old ones.
+     */
+    private static final Map<String, String> LEGACY_LANGUAGES = createLegacyLanguages();
+
+    private final String buildConfigPackageName;
+    private final SupportLibrary supportLibrary;
+    private final List<String> supportedLocales;
+    private final File outputDirectory;
+
+    @Inject
+    public GenerateCodeAction(String buildConfigPackageName, SupportLibrary supportLibrary,
+                              List<String> supportedLocales, File outputDirectory) {
+        this.buildConfigPackageName = buildConfigPackageName;
+        this.supportLibrary = supportLibrary;
+        this.supportedLocales = supportedLocales;
+        this.outputDirectory = outputDirectory;
+    }
+
+    @Override
+    public void run() {
+        try {
+            generate();
+        } catch (IOException ex) {
+            throw new GradleException("Could not generate L10nFix sources in " + outputDirectory, ex);
+        }
+    }
+
+    private void generate() throws IOException {
+        boolean useSupportLib = supportLibrary != SupportLibrary.NONE;
+        ClassName activity = useSupportLib ? ClassName.get(supportLibrary.getActivityPackage(), "AppCompatActivity")
+                : ClassName.get("android.app", "Activity");
+        ClassName context = ClassName.get("android.content", "Context");
+        ClassName configuration = ClassName.get("android.content.res", "Configuration");
+        ClassName resources = ClassName.get("android.content.res", "Resources");
+        ClassName build = ClassName.get("android.os", "Build");
+        ClassName localeList = ClassName.get("android.os", "LocaleList");
+        // Only available, and only used, with a support library
+        ClassName requiresApi = useSupportLib ? ClassName.get(supportLibrary.getAnnotationPackage(), "RequiresApi")
+                : null;
+        ParameterizedTypeName listOfLocale = ParameterizedTypeName.get(List.class, Locale.class);
+        ParameterizedTypeName arrayListOfLocale = ParameterizedTypeName.get(ArrayList.class, Locale.class);
+
+        ClassName ulocale = ClassName.get("android.icu.util", "ULocale");
+
+        AnnotationSpec requiresApiN = useSupportLib ? AnnotationSpec.builder(requiresApi)
+                .addMember("api", "$T.VERSION_CODES.N", build)
+                .build() : null;
+        AnnotationSpec suppressDeprecation = AnnotationSpec.builder(SuppressWarnings.class)
+                .addMember("value", "$S", "deprecation")
+                .build();
+
+        ClassName log = ClassName.get("android.util", "Log");
+        String tag = "L10nFix";
+
+        ParameterizedTypeName mapOfScripts = ParameterizedTypeName.get(Map.class, String.class, String[].class);
+        ParameterizedTypeName hashMapOfScripts = ParameterizedTypeName.get(HashMap.class, String.class,
+                String[].class);
+
+        // The locale table lives in its own class so that neither it nor L10nUtil depend on BuildConfig (which is
+        // regenerated for unrelated reasons). Supported locales are indexed by language, with the scripts they
+        // resolve to, so that the runtime check needs no ICU lookups for them.
+        CodeBlock.Builder tagsInit = CodeBlock.builder().add("{");
+        for (int i = 0; i < this.supportedLocales.size(); i++) {
+            tagsInit.add(i == 0 ? " $S" : ", $S", this.supportedLocales.get(i));
+        }
+        Map<String, Set<String>> likelyScripts = resolveLikelyScripts(this.supportedLocales);
+        CodeBlock.Builder createLikelyScriptsBody = CodeBlock.builder()
+                .addStatement("$T map = new $T($L)", mapOfScripts, hashMapOfScripts, likelyScripts.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : likelyScripts.entrySet()) {
+            CodeBlock.Builder scripts = CodeBlock.builder().add("{");
+            int i = 0;
+            for (String script : entry.getValue()) {
+                scripts.add(i++ == 0 ? " $S" : ", $S", script);
+            }
+            createLikelyScriptsBody.addStatement("map.put($S, new $T[] $L })", entry.getKey(), String.class,
+                    scripts.build());
+        }
+        createLikelyScriptsBody.addStatement("return map");
+
+        FieldSpec supportedLocaleTags = FieldSpec.builder(String[].class, "SUPPORTED_LOCALES",
+                Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("The locales supported by this app, as BCP 47 language tags.\n")
+                .initializer(tagsInit.add(this.supportedLocales.isEmpty() ? "}" : " }").build())
+                .build();
+
+        MethodSpec createLikelyScripts = MethodSpec.methodBuilder("createLikelyScripts")
+                .addJavadoc("The languages of the supported locales, mapped to the scripts of those locales once "
+                        + "likely subtags are added.\n")
+                .addModifiers(Modifier.STATIC)
+                .returns(mapOfScripts)
+                .addCode(createLikelyScriptsBody.build())
+                .build();
+
+        TypeSpec l10nLocales = TypeSpec.classBuilder("L10nFixLocales")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(supportedLocaleTags)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(createLikelyScripts)
+                .build();
+
+        FieldSpec supportedScripts = FieldSpec.builder(mapOfScripts, "LIKELY_SCRIPTS",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.unmodifiableMap($N.$N())", Collections.class, l10nLocales, createLikelyScripts)
+                .build();
+
+        MethodSpec l10nUtilConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build();
+
+        MethodSpec.Builder likelyScriptBuilder = MethodSpec.methodBuilder("likelyScript")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(String.class)
+                .addParameter(Locale.class, "locale")
+                .addStatement("$T script = locale.getScript()", String.class)
+                .beginControlFlow("if (script.isEmpty())")
+                    .addStatement("script = $T.addLikelySubtags($T.forLocale(locale)).getScript()", ulocale, ulocale)
+                .endControlFlow()
+                .addStatement("return script");
+        if (useSupportLib) {
+            likelyScriptBuilder.addAnnotation(requiresApiN);
+        }
+        MethodSpec likelyScript = likelyScriptBuilder.build();
+
+        MethodSpec.Builder isSupportedLocaleBuilder = MethodSpec.methodBuilder("isSupportedLocale")
+                .addJavadoc("Whether or not the specified {@code $T} is supported by this app.", Locale.class)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(boolean.class)
+                .addParameter(Locale.class, "locale")
+                .addStatement("$T[] scripts = $N.get(locale.getLanguage())", String.class, supportedScripts)
+                .beginControlFlow("if (scripts == null)")
+                    .addStatement("return false")
+                .endControlFlow()
+                .addStatement("$T script = $N(locale)", String.class, likelyScript)
+                .beginControlFlow("for ($T s : scripts)", String.class)
+                    .beginControlFlow("if (s.equals(script))")
+                        .addStatement("return true")
+                    .endControlFlow()
+                .endControlFlow()
+                .addStatement("return false");
+        if (useSupportLib) {
+            isSupportedLocaleBuilder.addAnnotation(requiresApiN);
+        }
+        MethodSpec isSupportedLocale = isSupportedLocaleBuilder.build();
+
+        MethodSpec.Builder filterUnsupportedLocalesBuilder = MethodSpec.methodBuilder("filterUnsupportedLocales")
+                .addJavadoc("Remove locales not supported by this app from the provided {@code LocaleList}.")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(localeList)
+                .addParameter(localeList, "locales")
+                .addStatement("$T filtered = new $T(locales.size())", listOfLocale, arrayListOfLocale)
+                .beginControlFlow("for (int i = 0; i < locales.size(); i++)")
+                    .addStatement("$T loc = locales.get(i)", Locale.class)
+                    .beginControlFlow("if ($N(loc))", isSupportedLocale)
+                        .addStatement("filtered.add(loc)")
+                    .endControlFlow()
+                .endControlFlow()
+                .addStatement("return new $T(filtered.toArray(new Locale[filtered.size()]))", localeList);
+        if (useSupportLib) {
+            filterUnsupportedLocalesBuilder.addAnnotation(requiresApiN);
+        }
+        MethodSpec filterUnsupportedLocales = filterUnsupportedLocalesBuilder.build();
+
+        MethodSpec.Builder fixLocalesBuilder = MethodSpec.methodBuilder("fixLocales")
+                .addJavadoc("Fix the specified {@code $T} to ensure that it only has locales supported by this app.", resources)
+                .addJavadoc("Call this after runtime contamination, e.g. after loading {@code WebView}. ")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(void.class)
+                .addAnnotation(suppressDeprecation)
+                .addParameter(resources, "resources")
+                .addStatement("$T config = resources.getConfiguration()", configuration)
+                .addStatement("$T currentLocales = config.getLocales()", localeList)
+                .beginControlFlow("if (!$N(currentLocales.get(0)))", isSupportedLocale)
+                    .addStatement("$T supportedLocales = $N(currentLocales)", localeList, filterUnsupportedLocales)
+                    .addStatement("$T.d($S, $S + currentLocales.toLanguageTags() + $S + supportedLocales.toLanguageTags())",
+                            log, tag, "Fixing language tags; before=", "; after=")
+                    .beginControlFlow("if (!supportedLocales.isEmpty())")
+                        .addStatement("config.setLocales(supportedLocales)")
+                        .addComment("updateConfiguration() is deprecated in SDK 25, but the alternative")
+                        .addComment("requires restarting the activity, which we don't want to do here.")
+                        .addStatement("resources.updateConfiguration(config, resources.getDisplayMetrics())")
+                    .endControlFlow()
+                .endControlFlow();
+        if (useSupportLib) {
+            fixLocalesBuilder.addAnnotation(requiresApiN);
+        }
+        MethodSpec fixLocales = fixLocalesBuilder.build();
+
+        TypeSpec l10nUtil = TypeSpec.classBuilder("L10nUtil")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(supportedScripts)
+                .addMethod(l10nUtilConstructor)
+                .addMethod(likelyScript)
+                .addMethod(isSupportedLocale)
+                .addMethod(filterUnsupportedLocales)
+                .addMethod(fixLocales)
+                .build();
+
+        MethodSpec attachBaseContext = MethodSpec.methodBuilder("attachBaseContext")
+                .addModifiers(Modifier.PROTECTED)
+                .returns(void.class)
+                .addAnnotation(Override.class)
+                .addParameter(context, "base")
+                .beginControlFlow("if ($T.VERSION.SDK_INT >= $T.VERSION_CODES.N)", build, build)
+                    .addStatement("$T currentLocales = base.getResources().getConfiguration().getLocales()", localeList)
+                    .beginControlFlow("if (!$N.$N(currentLocales.get(0)))", l10nUtil, isSupportedLocale)
+                        .addStatement("$T supportedLocales = $N.$N(currentLocales)", localeList, l10nUtil, filterUnsupportedLocales)
+                        .addStatement("$T.d($S, $S + currentLocales.toLanguageTags() + $S + supportedLocales.toLanguageTags())",
+                                log, tag, "Fixing language tags: before=", "; after=")
+                        .beginControlFlow("if (!supportedLocales.isEmpty())")
+                            .addStatement("$T config = new $T()", configuration, configuration)
+                            .addStatement("config.setLocales(supportedLocales)")
+                            .addStatement("base = base.createConfigurationContext(config)")
+                        .endControlFlow()
+                    .endControlFlow()
+                .endControlFlow()
+                .addStatement("super.attachBaseContext(base)")
+                .build();
+
+        TypeSpec l10nActivity = TypeSpec.classBuilder("L10nFixActivity")
+                .superclass(activity)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addMethod(attachBaseContext)
+                .build();
+
+        syncOutputDirectory(Arrays.asList(
+                JavaFile.builder(buildConfigPackageName, l10nLocales).build(),
+                JavaFile.builder(buildConfigPackageName, l10nUtil).build(),
+                JavaFile.builder(buildConfigPackageName, l10nActivity).build()));
+    }
+
+    /**
+     * Resolve the script of each locale once likely subtags are added, e.g. {@code Hans} for {@code zh-CN} and
+     * {@code Hant} for {@code zh-HK}, and index the scripts by language. Languages with legacy codes are indexed under
+     * both codes, as the runtime's {@link Locale#getLanguage()} may use either.
+     *
+     * @param tags BCP 47 language tags
+     * @return A sorted map of languages to sorted sets of scripts
+     */
+    static Map<String, Set<String>> resolveLikelyScripts(List<String> tags) {
+        Map<String, Set<String>> result = new TreeMap<>();
+        for (String tag : tags) {
+            ULocale locale = ULocale.addLikelySubtags(ULocale.forLanguageTag(tag));
+            String language = locale.getLanguage();
+            result.computeIfAbsent(language, l -> new TreeSet<>()).add(locale.getScript());
+            String legacyLanguage = LEGACY_LANGUAGES.get(language);
+            if (legacyLanguage != null) {
+                result.computeIfAbsent(legacyLanguage, l -> new TreeSet<>()).add(locale.getScript());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> createLegacyLanguages() {
+        Map<String, String> map = new HashMap<>();
+        String[][] pairs = {{"he", "iw"}, {"yi", "ji"}, {"id", "in"}};
+        for (String[] pair : pairs) {
+            map.put(pair[0], pair[1]);
+            map.put(pair[1], pair[0]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Make the output directory contain exactly the specified files. Files are only (re)written when their content
+     * changed, so that unchanged sources keep their timestamps and don't invalidate downstream incremental
+     * compilation. Anything else in the directory (e.g. files from a previous package name) is deleted.
+     */
+    private void syncOutputDirectory(List<JavaFile> javaFiles) throws IOException {
+        Path outputDir = outputDirectory.toPath();
+        Set<Path> expected = new HashSet<>();
+        for (JavaFile javaFile : javaFiles) {
+            Path path = outputDir;
+            if (!javaFile.packageName.isEmpty()) {
+                for (String component : javaFile.packageName.split("\\.")) {
+                    path = path.resolve(component);
+                }
+            }
+            path = path.resolve(javaFile.typeSpec.name + ".java");
+            expected.add(path);
+
+            byte[] content = javaFile.toString().getBytes(StandardCharsets.UTF_8);
+            if (Files.isRegularFile(path) && Arrays.equals(content, Files.readAllBytes(path))) {
+                LOGGER.debug("Unchanged: {}", path);
+                continue;
+            }
+            Files.createDirectories(path.getParent());
+            Files.write(path, content);
+            LOGGER.info("Wrote {}", path);
+        }
+
+        if (!Files.isDirectory(outputDir)) {
+            return;
+        }
+        Files.walkFileTree(outputDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!expected.contains(file)) {
+                    Files.delete(file);
+                    LOGGER.info("Deleted stale file {}", file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                if (!dir.equals(outputDir)) {
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        if (!entries.iterator().hasNext()) {
+                            Files.delete(dir);
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -1,13 +1,50 @@
 package com.madlonkay.android;
 
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+
 public class L10nFixExtension {
-    private String defaultLocale;
+    private final Property<String> defaultLocale;
+    private final Property<Boolean> buildConfigField;
+    private final Property<Boolean> failOnUnsupportedApkLocales;
+
+    public L10nFixExtension(ObjectFactory objects) {
+        defaultLocale = objects.property(String.class);
+        buildConfigField = objects.property(Boolean.class);
+        buildConfigField.set(true);
+        failOnUnsupportedApkLocales = objects.property(Boolean.class);
+        failOnUnsupportedApkLocales.set(false);
+    }
 
-    public String getDefaultLocale() {
+    public Property<String> getDefaultLocale() {
         return defaultLocale;
     }
 
     public void setDefaultLocale(String defaultLocale) {
-        this.defaultLocale = defaultLocale;
+        this.defaultLocale.set(defaultLocale);
+    }
+
+    /**
+     * Whether to also add the {@code SUPPORTED_LOCALES} array to {@code BuildConfig}. The generated
+     * {@code L10nFixLocales} class holds the same data and doesn't depend on {@code BuildConfig}.
+     */
+    public Property<Boolean> getBuildConfigField() {
+        return buildConfigField;
+    }
+
+    public void setBuildConfigField(boolean buildConfigField) {
+        this.buildConfigField.set(buildConfigField);
+    }
+
+    /**
+     * Whether resources for unsupported locales in a packaged APK should fail the build. Otherwise they are only
+     * reported as a warning.
+     */
+    public Property<Boolean> getFailOnUnsupportedApkLocales() {
+        return failOnUnsupportedApkLocales;
+    }
+
+    public void setFailOnUnsupportedApkLocales(boolean failOnUnsupportedApkLocales) {
+        this.failOnUnsupportedApkLocales.set(failOnUnsupportedApkLocales);
     }
 }
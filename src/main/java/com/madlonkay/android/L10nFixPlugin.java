@@ -6,102 +6,256 @@ import com.android.build.gradle.BaseExtension;
 import com.android.build.gradle.BasePlugin;
 import com.android.build.gradle.LibraryExtension;
 import com.android.build.gradle.LibraryPlugin;
-import com.android.build.gradle.api.AndroidSourceDirectorySet;
 import com.android.build.gradle.api.AndroidSourceSet;
+import com.android.build.gradle.api.ApkVariant;
+import com.android.build.gradle.api.ApkVariantOutput;
 import com.android.build.gradle.api.BaseVariant;
 import com.android.build.gradle.internal.dsl.DefaultConfig;
+import com.android.build.gradle.internal.dsl.ProductFlavor;
+import com.android.build.gradle.tasks.MergeResources;
+import com.android.builder.model.SourceProvider;
 
+import org.gradle.api.CircularReferenceException;
 import org.gradle.api.DomainObjectSet;
+import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
-import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.LenientConfiguration;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.UnresolvedDependency;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.logging.LogLevel;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class L10nFixPlugin implements Plugin<Project> {
     private static final String VERBOSITY_PROPERTY = "l10nFixVerbosity";
+    private static final String SCAN_CACHE_PROPERTY = "l10nFixScanCache";
+    private static final String SCAN_CACHE_FILE = "l10nFix/locale-scan.cache";
+    private static final String WATCH_PROPERTY = "l10nFixWatch";
+    private static final String AAR_GROUPS_PROPERTY = "l10nFixAarGroups";
+    private static final String AAR_CACHE_FILE = "l10nFix/aar-locales.cache";
+    private static final String AAR_EXTENSION = "aar";
+    private static final String MIN_COVERAGE_PROPERTY = "l10nFixMinCoverage";
+    private static final String STRING_NAMES_CACHE_FILE = "l10nFix/string-names.cache";
+    private static final String METRICS_PROPERTY = "l10nFixMetrics";
+    private static final String METRICS_FILE = "l10nFix/metrics.json";
+    private static final String GENERATED_SOURCE_DIR = "generated/source/l10nFix";
+    private static final String REPORT_DIR = "reports/l10nFix";
+    private static final String MERGER_FILE = "merger.xml";
     private static final List<Class<? extends BasePlugin>> ANDROID_PLUGINS = Arrays.asList(AppPlugin.class, LibraryPlugin.class);
     private static final String DEFAULT_LOCALE = "en";
     private static final String SUPPORTED_LOCALES_FIELD_NAME = "SUPPORTED_LOCALES";
     private static final String SUPPORTED_LOCALES_FIELD_TYPE = "String[]";
 
-    private static final Set<String> RES_LOCALES = new HashSet<>();
+    private final Map<GenerationInputs, GenerateCodeTask> generateCodeTasks = new HashMap<>();
+    private final Set<String> lowCoverageLocales = new HashSet<>();
 
     private int verbosity;
+    private BuildMetrics metrics;
 
     @Override
     public void apply(Project project) {
         verbosity = Util.readIntProperty(project, VERBOSITY_PROPERTY, 0);
+        Project rootProject = project.getRootProject();
+        metrics = BuildMetrics.get(project, Util.readBooleanProperty(rootProject, METRICS_PROPERTY, false),
+                new File(rootProject.getBuildDir(), METRICS_FILE));
 
-        L10nFixExtension extension = project.getExtensions().create("l10n", L10nFixExtension.class);
+        L10nFixExtension extension = project.getExtensions().create("l10n", L10nFixExtension.class,
+                project.getObjects());
+        Provider<String> defaultLocale = project.provider(() -> getDefaultLocale(project, extension));
 
-        if (RES_LOCALES.isEmpty()) {
-            // Find all locales indicated by resources in all projects.
-            // We would like to be able to use resolveLocalesActual here, but we only get one shot to modify a project's
-            // resConfigs and that is before the project has been evaluated, so we can't wait for the Android plugin to
-            // finish being configured.
-            iterProjects(project, proj -> resolveLocalesFileSystem(proj, RES_LOCALES));
-            logInfo(project, "Detected resource locales in filesystem: {}", RES_LOCALES);
+        // Find all locales indicated by resources in all projects; this is only done once per build.
+        // We would like to be able to use resolveLocalesActual here, but we only get one shot to modify a project's
+        // resConfigs and that is before the project has been evaluated, so we can't wait for the Android plugin to
+        // finish being configured.
+        LocaleService service = LocaleService.get(project);
+        Set<String> allLocales = service.getLocales(s -> resolveLocalesFileSystem(rootProject.getAllprojects(), s));
+        logInfo(project, "Detected resource locales in filesystem: {}", allLocales);
+
+        // Only the project itself and the projects it depends on contribute to its locales
+        Set<Project> localeProjects = resolveLocaleProjects(project, true);
+        // resConfigs can't be revised later, so dependencies declared after this point would silently be missed
+        project.afterEvaluate(p -> checkLocaleProjects(project, localeProjects));
+        Set<Path> localeProjectDirs = new HashSet<>();
+        for (Project p : localeProjects) {
+            localeProjectDirs.add(p.getProjectDir().toPath().toAbsolutePath().normalize());
+        }
+        Map<Path, Set<String>> resDirectories = new HashMap<>(service.getResDirectories(localeProjectDirs));
+
+        // Drop poorly translated locales, if desired
+        int minCoverage = Util.readIntProperty(project, MIN_COVERAGE_PROPERTY, 0);
+        if (minCoverage > 0) {
+            lowCoverageLocales.addAll(resolveLowCoverageLocales(project, resDirectories.keySet(), minCoverage,
+                    service));
+            if (!lowCoverageLocales.isEmpty()) {
+                resDirectories.replaceAll((dir, locales) -> {
+                    Set<String> filtered = new HashSet<>(locales);
+                    filtered.removeAll(lowCoverageLocales);
+                    return filtered;
+                });
+            }
+        }
+
+        Set<String> resLocales = new HashSet<>();
+        for (Set<String> locales : resDirectories.values()) {
+            resLocales.addAll(locales);
         }
 
+        // AARs from allowlisted groups count as the project's own resources
+        List<String> aarGroups = Util.readListProperty(project, AAR_GROUPS_PROPERTY);
+        Set<String> aarLocales = aarGroups.isEmpty()
+                ? Collections.emptySet()
+                : resolveLocalesAar(project, localeProjects, aarGroups, service);
+        resLocales.addAll(aarLocales);
+        logInfo(project, "Resource locales of {} and its dependencies: {}", project.getName(), resLocales);
+
         // Apply appropriate resConfigs to project
+        long resConfigsStart = metrics.start();
         iterPlugins(project, plugin ->
-                setResConfigs(project, plugin, Collections.unmodifiableSet(RES_LOCALES)));
-
-        // Add code-generation tasks to all variants
-        iterVariants(project, variant ->
-                addGenerateCodeTask(project, variant));
+                setResConfigs(project, plugin, service, resDirectories, aarLocales, resLocales));
+        metrics.stop(BuildMetrics.PHASE_RES_CONFIGS, project.getPath(), resConfigsStart);
 
-        // The rest must be done after evaluation so that the extensions can be initialized
-        project.afterEvaluate(proj -> {
-            // Gather the actual configured resConfig values
-            Set<String> resConfigLocales = new HashSet<>();
-            iterPlugins(proj, plugin ->
-                    resolveConfiguredLocales(proj, plugin, resConfigLocales));
+        // Variants are only created once the project has been evaluated, so by now the Android plugin's configuration
+        // (including the merged resConfigs of each variant's flavors) is complete.
+        iterVariants(project, variant -> {
+            List<String> supportedLocales = resolveSupportedLocales(variant, defaultLocale.get());
 
             // Check for locales that aren't configured.
             // This covers the (obscure) case where a locale only appears in generated resources, and the (more likely?)
             // case where the user has specified only some of the locales manually.
+            long verificationStart = metrics.start();
             Set<String> missingLocales = new HashSet<>();
-            iterPlugins(proj, plugin -> resolveLocalesActual(proj, plugin, missingLocales));
-            missingLocales.removeAll(resConfigLocales);
+            resolveLocalesActual(project, variant, missingLocales);
+            missingLocales.removeAll(resolveConfiguredLocales(variant));
+            missingLocales.removeAll(lowCoverageLocales);
             if (!missingLocales.isEmpty()) {
-                logWarn(proj, "Locales missing from resConfigs: {}", missingLocales);
+                logWarn(project, "Locales missing from resConfigs of {} ({}): {}", project.getName(),
+                        variant.getName(), missingLocales);
+            }
+            metrics.stop(BuildMetrics.PHASE_VERIFICATION, scopeName(project, variant.getName()), verificationStart);
+
+            // Set the supported locales BuildConfig array, if desired
+            if (extension.getBuildConfigField().get()) {
+                setBuildConfigField(project, variant, supportedLocales);
             }
 
-            // Set the supported locales BuildConfig array
-            Set<String> bcp47Locales = new HashSet<>(resConfigLocales.size());
-            Util.transformInto(resConfigLocales, Util::toBcp47, bcp47Locales);
-            bcp47Locales.add(getDefaultLocale(proj, extension));
-            iterVariants(proj, variant ->
-                    setBuildConfigField(proj, variant, Collections.unmodifiableSet(bcp47Locales)));
+            addGenerateCodeTask(project, variant, supportedLocales);
+
+            addLocaleFootprintTask(project, variant);
+
+            if (variant instanceof ApkVariant) {
+                addVerifyApkLocalesTask(project, (ApkVariant) variant, supportedLocales, extension);
+            }
         });
     }
 
-    private void setResConfigs(Project project, BasePlugin<?> plugin, Collection<String> resLocales) {
-        DefaultConfig defaultConfig = plugin.getExtension().getDefaultConfig();
+    /**
+     * Add the detected locales to the project's resConfigs. Locales that are only found in the resources of one of
+     * the project's product flavors are added to that flavor alone, so that other flavors' APKs don't carry (e.g.
+     * from dependencies) resources for locales they don't ship; all other locales are added to the default config.
+     * <p>
+     * Build types can't have resConfigs of their own, so locales found in build type source sets are common to all
+     * variants.
+     */
+    private void setResConfigs(Project project, BasePlugin<?> plugin, LocaleService service,
+                               Map<Path, Set<String>> resDirectories, Collection<String> aarLocales,
+                               Collection<String> resLocales) {
+        BaseExtension extension = plugin.getExtension();
+        DefaultConfig defaultConfig = extension.getDefaultConfig();
         if (Util.containsLocaleQualifier(defaultConfig.getResourceConfigurations())) {
             logInfo(project, "Manual resource configurations present; skipping");
-        } else {
-            defaultConfig.addResourceConfigurations(resLocales);
-            logInfo(project, "Adding resource configurations to {}: {}", project.getName(), resLocales);
-            logDebug(project, "...result: {}", defaultConfig.getResourceConfigurations());
+            return;
+        }
+
+        Map<ProductFlavor, Set<String>> flavorLocales = new LinkedHashMap<>();
+        Set<Path> flavorResDirs = new HashSet<>();
+        for (ProductFlavor flavor : extension.getProductFlavors()) {
+            AndroidSourceSet sourceSet = extension.getSourceSets().findByName(flavor.getName());
+            if (sourceSet == null) {
+                continue;
+            }
+            Set<String> locales = new HashSet<>();
+            for (File dir : sourceSet.getRes().getSrcDirs()) {
+                Path resDir = dir.toPath().toAbsolutePath().normalize();
+                flavorResDirs.add(resDir);
+                locales.addAll(service.getResDirectoryLocales(resDir));
+            }
+            locales.removeAll(lowCoverageLocales);
+            flavorLocales.put(flavor, locales);
+        }
+
+        Set<String> commonLocales = new HashSet<>(aarLocales);
+        for (Map.Entry<Path, Set<String>> entry : resDirectories.entrySet()) {
+            if (!flavorResDirs.contains(entry.getKey())) {
+                commonLocales.addAll(entry.getValue());
+            }
+        }
+        if (commonLocales.isEmpty()) {
+            // Empty resConfigs means "keep everything", so flavors without locales of their own would be left
+            // unfiltered; fall back to giving all variants all locales.
+            commonLocales.addAll(resLocales);
+            flavorLocales.clear();
+        }
+        if (commonLocales.isEmpty() && !lowCoverageLocales.isEmpty()) {
+            // Every locale was dropped for low coverage, and empty resConfigs would keep them all after all
+            throw new GradleException("All locales of " + project.getName() + " are below the "
+                    + MIN_COVERAGE_PROPERTY + " threshold (" + lowCoverageLocales + "); lower the threshold or add "
+                    + "resConfigs manually");
+        }
+
+        defaultConfig.addResourceConfigurations(commonLocales);
+        logInfo(project, "Adding resource configurations to {}: {}", project.getName(), commonLocales);
+        logDebug(project, "...result: {}", defaultConfig.getResourceConfigurations());
+
+        for (Map.Entry<ProductFlavor, Set<String>> entry : flavorLocales.entrySet()) {
+            ProductFlavor flavor = entry.getKey();
+            Set<String> locales = entry.getValue();
+            locales.removeAll(commonLocales);
+            if (locales.isEmpty()) {
+                continue;
+            }
+            if (Util.containsLocaleQualifier(flavor.getResourceConfigurations())) {
+                logInfo(project, "Manual resource configurations present in flavor {}; skipping", flavor.getName());
+                continue;
+            }
+            flavor.addResourceConfigurations(locales);
+            logInfo(project, "Adding resource configurations to {} ({}): {}", project.getName(), flavor.getName(),
+                    locales);
         }
     }
 
     private String getDefaultLocale(Project project, L10nFixExtension extension) {
-        String defaultLocale = extension.getDefaultLocale();
+        String defaultLocale = extension.getDefaultLocale().getOrNull();
         if (defaultLocale == null) {
             logDebug(project, "{} default locale not specified; using default ({})", project.getName(), DEFAULT_LOCALE);
             defaultLocale = DEFAULT_LOCALE;
@@ -111,89 +265,462 @@ public class L10nFixPlugin implements Plugin<Project> {
         return Util.toBcp47(defaultLocale);
     }
 
-    private void setBuildConfigField(Project project, BaseVariant variant, Collection<String> bcp47Locales) {
+    /**
+     * Determine a variant's supported locales from its configured resConfigs plus the default locale.
+     *
+     * @return A sorted, unmodifiable list of BCP 47 language tags
+     */
+    private List<String> resolveSupportedLocales(BaseVariant variant, String defaultLocale) {
+        Set<String> resConfigLocales = resolveConfiguredLocales(variant);
+        Set<String> bcp47Locales = new HashSet<>(resConfigLocales.size() + 1);
+        Util.transformInto(resConfigLocales, Util::toBcp47, bcp47Locales);
+        bcp47Locales.add(defaultLocale);
         List<String> localeList = new ArrayList<>(bcp47Locales);
         localeList.sort(Comparator.naturalOrder());
-        String fieldValue = Util.toArrayLiteral(localeList);
+        return Collections.unmodifiableList(localeList);
+    }
+
+    private void setBuildConfigField(Project project, BaseVariant variant, List<String> bcp47Locales) {
+        String fieldValue = Util.toArrayLiteral(bcp47Locales);
 
         logInfo(project, "{} ({}): {} = {}", project.getName(), variant.getName(), SUPPORTED_LOCALES_FIELD_NAME, fieldValue);
         variant.buildConfigField(SUPPORTED_LOCALES_FIELD_TYPE, SUPPORTED_LOCALES_FIELD_NAME, fieldValue);
     }
 
     /**
-     * Inspect a project's files' paths (not contents) to detect languages of included resources.
+     * Inspect projects' files' paths (not contents) to detect languages of included resources.
      * E.g. {@code res/values-XX/foo.xml} indicates support for language {@code XX}.
      * <p>
-     * All files in the project are inspected, using heuristics to eliminate false positives e.g.
-     * from dependencies. Unlike {@link #resolveLocalesActual(Project, BasePlugin, Collection)},
+     * All files in the projects are inspected, using heuristics to eliminate false positives e.g.
+     * from dependencies. Unlike {@link #resolveLocalesActual(Project, BaseVariant, Collection)},
      * this allows it to work at any time, even before the Android plugin has been configured.
+     * <p>
+     * Projects are scanned in parallel; each project's scan stops at the boundaries of nested projects so that
+     * every directory is visited at most once. Results are persisted in the root project's build directory and
+     * reused for projects whose directories haven't changed since (disable with {@code -Pl10nFixScanCache=false}).
+     * <p>
+     * With {@code -Pl10nFixWatch=true}, results are also kept in a {@link LocaleWatchIndex} in the daemon, so that
+     * later builds reuse them without touching the disk unless a watched directory has changed.
+     * <p>
+     * Each project's scan is timed, and the directories and entries it read are counted, in the {@link BuildMetrics}.
      *
-     * @param project    The project
-     * @param outLocales The collection into which detected locales will be added
+     * @param projects The projects
+     * @param service  The service to which each project's scan result will be contributed
+     */
+    private void resolveLocalesFileSystem(Collection<Project> projects, LocaleService service) {
+        long scanStart = metrics.start();
+        Set<Path> projectDirs = new HashSet<>();
+        for (Project p : projects) {
+            projectDirs.add(p.getProjectDir().toPath().toAbsolutePath().normalize());
+        }
+        Project rootProject = projects.iterator().next().getRootProject();
+        File cacheFile = new File(rootProject.getBuildDir(), SCAN_CACHE_FILE);
+        boolean useCache = Util.readBooleanProperty(rootProject, SCAN_CACHE_PROPERTY, true);
+        LocaleScanCache cache = useCache ? LocaleScanCache.load(cacheFile, projectDirs) : null;
+        LocaleWatchIndex index = null;
+        if (Util.readBooleanProperty(rootProject, WATCH_PROPERTY, false)) {
+            index = LocaleWatchIndex.get(rootProject.getProjectDir().toPath().toAbsolutePath().normalize(),
+                    projectDirs);
+            if (index.isWatching()) {
+                index.refresh();
+            } else {
+                logInfo(rootProject, "File watching is not available; scanning instead");
+                index = null;
+            }
+        }
+        LocaleWatchIndex watchIndex = index;
+        Set<String> locales = ConcurrentHashMap.newKeySet();
+        projects.parallelStream().forEach(p -> {
+            long projectStart = metrics.start();
+            Path projectDir = p.getProjectDir().toPath().toAbsolutePath().normalize();
+            LocaleScanner.Result result = watchIndex == null ? null : watchIndex.get(projectDir);
+            if (result != null) {
+                logDebug(p, "Using watched index of file tree: {}", projectDir);
+                metrics.count(BuildMetrics.COUNTER_PROJECTS_FROM_WATCH_INDEX, 1);
+            } else {
+                result = cache == null ? null : cache.get(projectDir);
+                if (result == null) {
+                    logDebug(p, "Inspecting file tree: {}", projectDir);
+                    result = LocaleScanner.scan(projectDir, projectDirs);
+                    if (cache != null) {
+                        cache.put(projectDir, result);
+                    }
+                    metrics.count(BuildMetrics.COUNTER_PROJECTS_SCANNED, 1);
+                    metrics.count(BuildMetrics.COUNTER_DIRECTORIES_VISITED, result.getDirectoriesVisited());
+                    metrics.count(BuildMetrics.COUNTER_FILES_EXAMINED, result.getFilesExamined());
+                } else {
+                    logDebug(p, "Using cached scan of file tree: {}", projectDir);
+                    metrics.count(BuildMetrics.COUNTER_PROJECTS_FROM_CACHE, 1);
+                }
+                if (watchIndex != null) {
+                    watchIndex.put(projectDir, result);
+                }
+            }
+            service.contribute(projectDir, result);
+            if (metrics.isEnabled()) {
+                locales.addAll(result.getLocales());
+            }
+            metrics.stop(BuildMetrics.PHASE_PROJECT_SCAN, p.getPath(), projectStart);
+        });
+        metrics.count(BuildMetrics.COUNTER_LOCALES_FOUND, locales.size());
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException ex) {
+                logWarn(rootProject, "Could not write locale scan cache {}: {}", cacheFile, ex.getMessage());
+            }
+        }
+        metrics.stop(BuildMetrics.PHASE_SCAN, BuildMetrics.SCOPE_BUILD, scanStart);
+    }
+
+    /**
+     * Find the projects whose resources end up in a project's outputs: the project itself plus the projects it
+     * depends on, transitively, via {@code project(...)} dependencies of non-test configurations.
+     * <p>
+     * Dependency projects are evaluated first, if {@code evaluate} is set, so that their own dependencies have been
+     * declared. Because of this the plugin should be applied after the {@code dependencies {}} block.
      */
-    private void resolveLocalesFileSystem(Project project, Collection<String> outLocales) {
-        ConfigurableFileTree tree = project.fileTree(project.getProjectDir());
-        tree.include("**/values/**");
-        tree.include("**/values-*/**");
-        tree.exclude("**/build/**", "**/test/**", "**/androidTest/**");
-        logDebug(project, "Inspecting file tree: {}", tree);
-        for (File file : tree.getFiles()) {
-            String locale = Util.resolveLocale(file);
-            logDebug(project, "{} -> {}", file, locale);
-            if (locale != null) {
-                outLocales.add(locale);
+    private Set<Project> resolveLocaleProjects(Project project, boolean evaluate) {
+        Set<Project> visited = new LinkedHashSet<>();
+        Deque<Project> queue = new ArrayDeque<>();
+        queue.add(project);
+        while (!queue.isEmpty()) {
+            Project current = queue.remove();
+            if (!visited.add(current)) {
+                continue;
+            }
+            if (evaluate && current != project && !current.getState().getExecuted()) {
+                try {
+                    project.evaluationDependsOn(current.getPath());
+                } catch (CircularReferenceException ex) {
+                    // The dependency is already being evaluated further up the stack; use what it has declared so far
+                    logDebug(project, "Circular evaluation of {}: {}", current.getPath(), ex.getMessage());
+                }
+            }
+            for (Configuration configuration : current.getConfigurations()) {
+                if (configuration.getName().toLowerCase(Locale.ENGLISH).contains("test")) {
+                    continue;
+                }
+                for (ProjectDependency dependency : configuration.getDependencies().withType(ProjectDependency.class)) {
+                    queue.add(dependency.getDependencyProject());
+                }
             }
         }
+        logDebug(project, "{} locale projects: {}", project.getName(), visited);
+        return visited;
     }
 
     /**
-     * Inspect a project's files' paths (not contents) to detect languages of included resources.
+     * Fail if project dependencies were declared after the plugin resolved the project's locale projects, e.g. because
+     * the plugin was applied before the {@code dependencies {}} block, as their locales would be missing from
+     * resConfigs.
+     */
+    private void checkLocaleProjects(Project project, Set<Project> localeProjects) {
+        Set<Project> missing = resolveLocaleProjects(project, false);
+        missing.removeAll(localeProjects);
+        if (!missing.isEmpty()) {
+            Set<String> paths = new TreeSet<>();
+            for (Project p : missing) {
+                paths.add(p.getPath());
+            }
+            throw new GradleException("Project dependencies of " + project.getPath() + " were declared after "
+                    + "the l10n fix plugin was applied: " + paths + ". Apply the plugin after the dependencies {} "
+                    + "block.");
+        }
+    }
+
+    /**
+     * Detect locales in the AAR artifacts of external dependencies from allowlisted groups, e.g. in-house libraries.
+     * <p>
+     * The allowlisted dependencies declared by the projects' non-test configurations are resolved (leniently, and
+     * transitively, keeping only allowlisted artifacts), and each AAR's locales are read from its zip central directory
+     * without extracting it. Results are cached per artifact in the Gradle user home.
+     *
+     * @param project  The project
+     * @param projects The projects whose declared dependencies are considered
+     * @param groups   The allowlisted groups; subgroups (e.g. {@code com.example.ui} for {@code com.example}) match too
+     * @param service  The service holding the build's AAR cache
+     * @return The resource locales (e.g. {@code es-rMX}) of the AARs
+     */
+    private Set<String> resolveLocalesAar(Project project, Collection<Project> projects, List<String> groups,
+                                          LocaleService service) {
+        long start = metrics.start();
+        List<Dependency> dependencies = new ArrayList<>();
+        for (Project p : projects) {
+            for (Configuration configuration : p.getConfigurations()) {
+                if (configuration.getName().toLowerCase(Locale.ENGLISH).contains("test")) {
+                    continue;
+                }
+                for (ExternalModuleDependency dependency
+                        : configuration.getDependencies().withType(ExternalModuleDependency.class)) {
+                    if (isAllowedGroup(dependency.getGroup(), groups)) {
+                        dependencies.add(dependency.copy());
+                    }
+                }
+            }
+        }
+        Set<String> locales = new HashSet<>();
+        if (dependencies.isEmpty()) {
+            metrics.stop(BuildMetrics.PHASE_AAR_SCAN, project.getPath(), start);
+            return locales;
+        }
+
+        // This resolves the dependencies at configuration time, as resConfigs must be set before AGP's tasks are
+        // configured; released AARs aren't downloaded if their locales are already cached
+        Configuration configuration = project.getConfigurations()
+                .detachedConfiguration(dependencies.toArray(new Dependency[0]));
+        LenientConfiguration resolved = configuration.getResolvedConfiguration().getLenientConfiguration();
+        for (UnresolvedDependency unresolved : resolved.getUnresolvedModuleDependencies()) {
+            logInfo(project, "Could not resolve {} for locale detection", unresolved.getSelector());
+        }
+
+        File cacheFile = new File(project.getGradle().getGradleUserHomeDir(), AAR_CACHE_FILE);
+        StringSetCache cache = service.getCache(cacheFile);
+        for (ResolvedArtifact artifact : resolved.getArtifacts()) {
+            if (!AAR_EXTENSION.equals(artifact.getExtension())
+                    || !isAllowedGroup(artifact.getModuleVersion().getId().getGroup(), groups)) {
+                continue;
+            }
+            // Look released modules up by coordinates first, as getting the file may mean downloading it
+            ComponentIdentifier componentId = artifact.getId().getComponentIdentifier();
+            String key = null;
+            if (componentId instanceof ModuleComponentIdentifier) {
+                ModuleComponentIdentifier moduleId = (ModuleComponentIdentifier) componentId;
+                key = LocaleScanner.moduleArtifactKey(moduleId.getGroup(), moduleId.getModule(),
+                        moduleId.getVersion(), artifact.getClassifier());
+            }
+            Set<String> aarLocales = key == null ? null : cache.get(key);
+            if (aarLocales != null) {
+                logDebug(project, "{} -> {}", componentId, aarLocales);
+                locales.addAll(aarLocales);
+                continue;
+            }
+            Path aar = artifact.getFile().toPath();
+            try {
+                if (key == null) {
+                    key = LocaleScanner.archiveKey(aar);
+                    aarLocales = cache.get(key);
+                }
+                if (aarLocales == null) {
+                    logDebug(project, "Inspecting AAR: {}", aar);
+                    aarLocales = LocaleScanner.scanArchive(aar);
+                    cache.put(key, aarLocales);
+                    metrics.count(BuildMetrics.COUNTER_AARS_EXAMINED, 1);
+                }
+                logDebug(project, "{} -> {}", componentId, aarLocales);
+                locales.addAll(aarLocales);
+            } catch (IOException ex) {
+                logWarn(project, "Could not read {}: {}", aar, ex.getMessage());
+            }
+        }
+        try {
+            cache.save();
+        } catch (IOException ex) {
+            logWarn(project, "Could not write AAR locale cache {}: {}", cacheFile, ex.getMessage());
+        }
+        logInfo(project, "Detected resource locales in AARs of {}: {}", project.getName(), locales);
+        metrics.stop(BuildMetrics.PHASE_AAR_SCAN, project.getPath(), start);
+        return locales;
+    }
+
+    /**
+     * Find the locales whose translation coverage of the specified {@code res} directories' strings is below a
+     * threshold. Parsed files are cached in the root project's build directory.
+     *
+     * @param minCoverage The minimum coverage, in percent
+     * @return The resource locales (e.g. {@code es-rMX}) below the threshold
+     */
+    private Set<String> resolveLowCoverageLocales(Project project, Collection<Path> resDirs, int minCoverage,
+                                                  LocaleService service) {
+        long start = metrics.start();
+        File cacheFile = new File(project.getRootProject().getBuildDir(), STRING_NAMES_CACHE_FILE);
+        StringSetCache cache = service.getBuildCache(cacheFile);
+        Map<String, Double> coverage = TranslationCoverage.compute(resDirs, cache);
+        try {
+            cache.save();
+        } catch (IOException ex) {
+            logWarn(project, "Could not write string names cache {}: {}", cacheFile, ex.getMessage());
+        }
+        logInfo(project, "Translation coverage of {}: {}", project.getName(), coverage);
+        Set<String> result = TranslationCoverage.findBelow(coverage, minCoverage);
+        if (!result.isEmpty()) {
+            logWarn(project, "Excluding locales of {} with less than {}% translation coverage: {}", project.getName(),
+                    minCoverage, result);
+        }
+        metrics.stop(BuildMetrics.PHASE_COVERAGE, project.getPath(), start);
+        return result;
+    }
+
+    private static boolean isAllowedGroup(String group, List<String> groups) {
+        if (group == null) {
+            return false;
+        }
+        for (String allowed : groups) {
+            if (group.equals(allowed) || group.startsWith(allowed + '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inspect a variant's files' paths (not contents) to detect languages of included resources.
      * E.g. {@code res/values-XX/foo.xml} indicates support for language {@code XX}.
      * <p>
-     * Only actual resource files are inspected. Unlike {@link #resolveLocalesFileSystem(Project, Collection)},
-     * this is accurate but can only be run after the Android plugin has been configured.
+     * Only the resource directories of the variant's source sets are inspected. Unlike
+     * {@link #resolveLocalesFileSystem(Collection, LocaleService)}, this is accurate but can only be run after the
+     * Android plugin has been configured. Directories already covered by the filesystem scan are looked up in the
+     * {@link LocaleService} index rather than being read again. Source sets whose {@code res} has include or exclude
+     * patterns are inspected file by file instead, so that the patterns are honored.
      *
      * @param project    The project
-     * @param plugin     The Android plugin applied to the project
+     * @param variant    The variant
      * @param outLocales The collection into which detected locales will be added
      */
-    private void resolveLocalesActual(Project project, BasePlugin<?> plugin, Collection<String> outLocales) {
-        for (AndroidSourceSet sourceSet : plugin.getExtension().getSourceSets()) {
-            AndroidSourceDirectorySet res = sourceSet.getRes();
-            if (sourceSet.getName().toLowerCase(Locale.ENGLISH).contains("test")) {
+    private void resolveLocalesActual(Project project, BaseVariant variant, Collection<String> outLocales) {
+        LocaleService service = LocaleService.get(project);
+        BaseExtension extension = project.getExtensions().getByType(BaseExtension.class);
+        for (SourceProvider sourceProvider : variant.getSourceSets()) {
+            logDebug(project, "Inspecting {} {}", project.getName(), sourceProvider.getName());
+            AndroidSourceSet sourceSet = extension.getSourceSets().findByName(sourceProvider.getName());
+            if (sourceSet != null && (!sourceSet.getRes().getFilter().getIncludes().isEmpty()
+                    || !sourceSet.getRes().getFilter().getExcludes().isEmpty())) {
+                for (File file : sourceSet.getRes().getSourceFiles()) {
+                    String locale = Util.resolveLocale(file);
+                    logDebug(project, "{} -> {}", file, locale);
+                    if (locale != null) {
+                        outLocales.add(locale);
+                    }
+                }
                 continue;
             }
-            logDebug(project, "Inspecting {} {}", project.getName(), res.getName());
-            for (File file : res.getSourceFiles()) {
-                String locale = Util.resolveLocale(file);
-                logDebug(project, "{} -> {}", file, locale);
-                if (locale != null) {
-                    outLocales.add(locale);
-                }
+            for (File dir : sourceProvider.getResDirectories()) {
+                Set<String> locales = service.getResDirectoryLocales(dir.toPath().toAbsolutePath().normalize());
+                logDebug(project, "{} -> {}", dir, locales);
+                outLocales.addAll(locales);
             }
         }
     }
 
-    private void addGenerateCodeTask(Project project, BaseVariant variant) {
-        String taskName = Util.makeTaskName("generate", variant.getFlavorName(), variant.getBuildType().getName(), "L10nFix");
-        GenerateCodeTask task = project.getTasks().create(taskName, GenerateCodeTask.class);
-        logDebug(project, "Generating task: {}", task.getPath());
-        task.setBuildConfigPackageName(variant.getGenerateBuildConfig().getBuildConfigPackageName());
-        variant.registerJavaGeneratingTask(task, task.getOutputDirectory());
+    /**
+     * Wire up code generation for a variant. The generated sources depend only on the variant's
+     * {@link GenerationInputs}, and in practice most variants have identical inputs, so a single task (and output
+     * directory) is shared by all variants with the same inputs. The shared task is named for the first variant to use
+     * it (e.g. {@code generateDebugL10nFixSources}), which is stable as long as the variants are.
+     * <p>
+     * Every variant also gets its own {@code generate<Variant>L10nFix} task, which just depends on the shared task.
+     * <p>
+     * The shared task is created eagerly: AGP 3.1's variant API only accepts a realized {@code Task}, so registering
+     * it lazily would gain nothing. The per-variant tasks are registered lazily, as nothing needs them realized.
+     */
+    private void addGenerateCodeTask(Project project, BaseVariant variant, List<String> supportedLocales) {
+        GenerationInputs inputs = new GenerationInputs(variant.getGenerateBuildConfig().getBuildConfigPackageName(),
+                resolveSupportLibrary(project, variant), supportedLocales);
+        GenerateCodeTask generateTask = generateCodeTasks.get(inputs);
+        if (generateTask == null) {
+            String taskName = Util.makeTaskName("generate", variant.getName(), "L10nFixSources");
+            // Each task needs its own output directory; overlapping outputs would prevent caching
+            File outputDirectory = new File(project.getBuildDir(), GENERATED_SOURCE_DIR + "/" + variant.getDirName());
+            generateTask = project.getTasks().create(taskName, GenerateCodeTask.class, task -> {
+                task.getBuildConfigPackageName().set(inputs.buildConfigPackageName);
+                task.getSupportLibrary().set(inputs.supportLibrary);
+                task.getSupportedLocales().set(inputs.supportedLocales);
+                task.setOutputDirectory(outputDirectory);
+            });
+            generateCodeTasks.put(inputs, generateTask);
+            logDebug(project, "Created task: {}", taskName);
+        }
+        logDebug(project, "{} ({}): using task {}", project.getName(), variant.getName(), generateTask.getName());
+
+        String variantTaskName = Util.makeTaskName("generate", variant.getName(), "L10nFix");
+        GenerateCodeTask sharedTask = generateTask;
+        project.getTasks().register(variantTaskName, task -> {
+            task.setDescription("Generates the l10n fix sources of " + variant.getName());
+            task.dependsOn(sharedTask);
+        });
+        logDebug(project, "Registered task: {}", variantTaskName);
+
+        variant.registerJavaGeneratingTask(generateTask, generateTask.getOutputDirectory());
     }
 
-    private void resolveConfiguredLocales(Project project, BasePlugin<?> plugin, Collection<String> outLocales) {
-        for (String config : plugin.getExtension().getDefaultConfig().getResourceConfigurations()) {
+    /**
+     * @return The locale qualifiers among the variant's resConfigs, i.e. those of the default config and the
+     * variant's flavors
+     */
+    private static Set<String> resolveConfiguredLocales(BaseVariant variant) {
+        Set<String> locales = new HashSet<>();
+        for (String config : variant.getMergedFlavor().getResourceConfigurations()) {
             if (Util.isLocaleQualifier(config)) {
-                outLocales.add(config);
+                locales.add(config);
             }
         }
+        return locales;
     }
 
-    private static void iterProjects(Project project, Consumer<Project> consumer) {
-        for (Project p : project.getRootProject().getAllprojects()) {
-            consumer.accept(p);
-        }
+    /**
+     * Add an on-demand report of a variant's merged resources by locale and source.
+     */
+    private void addLocaleFootprintTask(Project project, BaseVariant variant) {
+        String taskName = Util.makeTaskName("report", variant.getName(), "LocaleFootprint");
+        File reportDir = new File(project.getBuildDir(), REPORT_DIR + "/" + variant.getDirName());
+        MergeResources mergeResources = variant.getMergeResources();
+        project.getTasks().register(taskName, LocaleFootprintTask.class, task -> {
+            logDebug(project, "Configuring task: {}", task.getPath());
+            task.setDescription("Reports the resources of " + variant.getName() + " by locale and source");
+            task.setVariantName(variant.getName());
+            task.setMergerFile(new File(mergeResources.getIncrementalFolder(), MERGER_FILE));
+            task.setJsonReport(new File(reportDir, "locale-footprint.json"));
+            task.setHtmlReport(new File(reportDir, "locale-footprint.html"));
+            task.dependsOn(mergeResources);
+        });
+        logDebug(project, "Registered task: {}", taskName);
+    }
+
+    /**
+     * Check each APK of a variant for unsupported locales as soon as it has been packaged.
+     */
+    private void addVerifyApkLocalesTask(Project project, ApkVariant variant, List<String> supportedLocales,
+                                         L10nFixExtension extension) {
+        String taskName = Util.makeTaskName("verify", variant.getName(), "ApkLocales");
+        File reportFile = new File(project.getBuildDir(), REPORT_DIR + "/" + variant.getDirName() + "/apk-locales.txt");
+        TaskProvider<VerifyApkLocalesTask> provider = project.getTasks().register(taskName,
+                VerifyApkLocalesTask.class, task -> {
+                    logDebug(project, "Configuring task: {}", task.getPath());
+                    task.getSupportedLocales().set(supportedLocales);
+                    task.getFailOnUnsupported().set(extension.getFailOnUnsupportedApkLocales());
+                    task.setReportFile(reportFile);
+                });
+        variant.getOutputs().all(output -> {
+            if (output instanceof ApkVariantOutput) {
+                Task packageTask = ((ApkVariantOutput) output).getPackageApplication();
+                provider.configure(task -> {
+                    task.getApkFiles().from(output.getOutputFile());
+                    task.dependsOn(packageTask);
+                });
+                packageTask.finalizedBy(provider);
+            }
+        });
+        logDebug(project, "Registered task: {}", taskName);
+    }
+
+    /**
+     * Detect the support library that a variant compiles against. Only the variant's compile classpath
+     * configuration is inspected; each variant has its own, so this costs one detection per variant.
+     */
+    private SupportLibrary resolveSupportLibrary(Project project, BaseVariant variant) {
+        Configuration configuration = variant.getCompileConfiguration();
+        long start = metrics.start();
+        SupportLibrary result = SupportLibrary.detect(configuration);
+        logDebug(project, "{} ({}): support library: {}", project.getName(), configuration.getName(), result);
+        metrics.stop(BuildMetrics.PHASE_SUPPORT_LIBRARY, scopeName(project, configuration.getName()), start);
+        return result;
+    }
+
+    /**
+     * @return The metrics scope of a variant or configuration of a project, e.g. {@code :app (debug)}
+     */
+    private static String scopeName(Project project, String name) {
+        return project.getPath() + " (" + name + ")";
     }
 
     private static void iterPlugins(Project project, Consumer<BasePlugin<?>> consumer) {
@@ -239,4 +766,39 @@ public class L10nFixPlugin implements Plugin<Project> {
         }
         project.getLogger().log(level, format, args);
     }
+
+    /**
+     * The per-variant values that determine the content of the generated sources.
+     */
+    private static final class GenerationInputs {
+        private final String buildConfigPackageName;
+        private final SupportLibrary supportLibrary;
+        private final List<String> supportedLocales;
+
+        GenerationInputs(String buildConfigPackageName, SupportLibrary supportLibrary,
+                         List<String> supportedLocales) {
+            this.buildConfigPackageName = buildConfigPackageName;
+            this.supportLibrary = supportLibrary;
+            this.supportedLocales = supportedLocales;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            GenerationInputs that = (GenerationInputs) o;
+            return Objects.equals(buildConfigPackageName, that.buildConfigPackageName)
+                    && supportLibrary == that.supportLibrary
+                    && supportedLocales.equals(that.supportedLocales);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(buildConfigPackageName, supportLibrary, supportedLocales);
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package com.madlonkay.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The resources of a variant, attributed to locales and to the modules or AARs that contributed them.
+ * <p>
+ * This is read from the resource merger's state file ({@code merger.xml}), which lists every resource set (the
+ * variant's own source sets, and one per library) with its files and their qualifiers, so the whole footprint is
+ * gathered in a single streaming pass without walking the merged output. Each file counts as one entry, except for
+ * {@code values} files, where each resource counts as one; sizes are those of the source files.
+ */
+class LocaleFootprint {
+
+    /**
+     * The locale key for resources without a locale qualifier.
+     */
+    static final String DEFAULT_LOCALE = "(default)";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final Comparator<Map<String, Object>> BY_SIZE = Comparator
+            .comparing((Map<String, Object> m) -> (Long) m.get("bytes")).reversed()
+            .thenComparing(m -> (Integer) m.get("entries"), Comparator.reverseOrder())
+            .thenComparing(m -> String.valueOf(m.containsKey("locale") ? m.get("locale") : m.get("source")));
+
+    private final Map<String, Map<String, Usage>> usage = new HashMap<>();
+
+    private LocaleFootprint() {
+    }
+
+    /**
+     * Read the footprint from a resource merger state file.
+     *
+     * @return The footprint, or null if there is no such file (e.g. because the Android plugin keeps its state
+     * elsewhere)
+     */
+    static LocaleFootprint read(Path mergerFile) throws IOException {
+        if (!Files.isRegularFile(mergerFile)) {
+            return null;
+        }
+        LocaleFootprint footprint = new LocaleFootprint();
+        XMLStreamReader reader = null;
+        try (InputStream in = Files.newInputStream(mergerFile)) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            String source = null;
+            Usage fileUsage = null;
+            // Depth of the current <file> element; its children are values resources
+            int fileDepth = -1;
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (fileUsage != null && depth == fileDepth + 1) {
+                        fileUsage.entries++;
+                    } else if ("dataSet".equals(name)) {
+                        source = reader.getAttributeValue(null, "config");
+                    } else if ("file".equals(name) && source != null) {
+                        String qualifiers = reader.getAttributeValue(null, "qualifiers");
+                        String locale = qualifiers == null ? null : Util.resolveLocaleQualifiers(qualifiers);
+                        fileUsage = footprint.get(locale == null ? DEFAULT_LOCALE : locale, source);
+                        fileDepth = depth;
+                        String path = reader.getAttributeValue(null, "path");
+                        if (path != null) {
+                            fileUsage.bytes += fileSize(Paths.get(path));
+                        }
+                        if (reader.getAttributeValue(null, "type") != null) {
+                            // A non-values file: the file itself is the entry
+                            fileUsage.entries++;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == fileDepth) {
+                        fileUsage = null;
+                        fileDepth = -1;
+                    } else if ("dataSet".equals(reader.getLocalName())) {
+                        source = null;
+                    }
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Could not parse " + mergerFile, ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // Ignore
+                }
+            }
+        }
+        return footprint;
+    }
+
+    private Usage get(String locale, String source) {
+        return usage.computeIfAbsent(locale, l -> new HashMap<>()).computeIfAbsent(source, s -> new Usage());
+    }
+
+    /**
+     * @return A JSON-compatible model of the footprint: a list of locales sorted by size (largest first), each with
+     * its totals and its sources, also sorted by size
+     */
+    List<Map<String, Object>> toModel() {
+        List<Map<String, Object>> locales = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Usage>> localeEntry : usage.entrySet()) {
+            Usage total = new Usage();
+            List<Map<String, Object>> sources = new ArrayList<>();
+            for (Map.Entry<String, Usage> sourceEntry : localeEntry.getValue().entrySet()) {
+                Usage sourceUsage = sourceEntry.getValue();
+                total.entries += sourceUsage.entries;
+                total.bytes += sourceUsage.bytes;
+                Map<String, Object> source = new LinkedHashMap<>();
+                source.put("source", sourceEntry.getKey());
+                source.put("entries", sourceUsage.entries);
+                source.put("bytes", sourceUsage.bytes);
+                sources.add(source);
+            }
+            sources.sort(BY_SIZE);
+            Map<String, Object> locale = new LinkedHashMap<>();
+            locale.put("locale", localeEntry.getKey());
+            locale.put("entries", total.entries);
+            locale.put("bytes", total.bytes);
+            locale.put("sources", sources);
+            locales.add(locale);
+        }
+        locales.sort(BY_SIZE);
+        return locales;
+    }
+
+    private static long fileSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException ex) {
+            // Deleted since the merge
+            return 0;
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static final class Usage {
+        private int entries;
+        private long bytes;
+    }
+}
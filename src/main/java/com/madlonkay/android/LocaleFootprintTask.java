@@ -0,0 +1,126 @@
+package com.madlonkay.android;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Reports a variant's merged resources by locale and by contributing module or AAR, as JSON and HTML.
+ *
+ * @see LocaleFootprint
+ */
+public class LocaleFootprintTask extends DefaultTask {
+
+    private String variantName;
+    private File mergerFile;
+    private File jsonReport;
+    private File htmlReport;
+
+    @Input
+    public String getVariantName() {
+        return variantName;
+    }
+
+    public void setVariantName(String variantName) {
+        this.variantName = variantName;
+    }
+
+    /**
+     * The resource merger's state file, {@code merger.xml}. It may not exist, if the Android plugin lays out its
+     * intermediates differently than expected.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public File getMergerFile() {
+        return mergerFile;
+    }
+
+    public void setMergerFile(File mergerFile) {
+        this.mergerFile = mergerFile;
+    }
+
+    @OutputFile
+    public File getJsonReport() {
+        return jsonReport;
+    }
+
+    public void setJsonReport(File jsonReport) {
+        this.jsonReport = jsonReport;
+    }
+
+    @OutputFile
+    public File getHtmlReport() {
+        return htmlReport;
+    }
+
+    public void setHtmlReport(File htmlReport) {
+        this.htmlReport = htmlReport;
+    }
+
+    @TaskAction
+    public void report() throws IOException {
+        LocaleFootprint footprint = LocaleFootprint.read(mergerFile.toPath());
+        if (footprint == null) {
+            getLogger().warn("Resource merger state not found at {}; skipping locale footprint report of {}",
+                    mergerFile, variantName);
+            Files.deleteIfExists(jsonReport.toPath());
+            Files.deleteIfExists(htmlReport.toPath());
+            return;
+        }
+        List<Map<String, Object>> locales = footprint.toModel();
+
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("variant", variantName);
+        model.put("locales", locales);
+        Files.createDirectories(jsonReport.getParentFile().toPath());
+        Files.write(jsonReport.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(model))
+                .getBytes(StandardCharsets.UTF_8));
+
+        Files.createDirectories(htmlReport.getParentFile().toPath());
+        try (PrintWriter html = new PrintWriter(Files.newBufferedWriter(htmlReport.toPath(), StandardCharsets.UTF_8))) {
+            writeHtml(html, locales);
+        }
+        getLogger().lifecycle("Locale footprint report: {}", htmlReport.toURI());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeHtml(PrintWriter html, List<Map<String, Object>> locales) {
+        html.println("<!DOCTYPE html>");
+        html.println("<html><head><meta charset=\"utf-8\"><title>Locale footprint: " + escape(variantName)
+                + "</title>");
+        html.println("<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+                + "td,th{padding:2px 8px;text-align:left}td.n{text-align:right}tr.locale{font-weight:bold;"
+                + "border-top:1px solid #ccc}</style></head><body>");
+        html.println("<h1>Locale footprint: " + escape(variantName) + "</h1>");
+        html.println("<table><tr><th>Locale</th><th>Source</th><th>Entries</th><th>Bytes</th></tr>");
+        for (Map<String, Object> locale : locales) {
+            html.println("<tr class=\"locale\"><td>" + escape(locale.get("locale")) + "</td><td></td><td class=\"n\">"
+                    + locale.get("entries") + "</td><td class=\"n\">" + locale.get("bytes") + "</td></tr>");
+            for (Map<String, Object> source : (List<Map<String, Object>>) locale.get("sources")) {
+                html.println("<tr><td></td><td>" + escape(source.get("source")) + "</td><td class=\"n\">"
+                        + source.get("entries") + "</td><td class=\"n\">" + source.get("bytes") + "</td></tr>");
+            }
+        }
+        html.println("</table></body></html>");
+    }
+
+    private static String escape(Object value) {
+        return String.valueOf(value).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
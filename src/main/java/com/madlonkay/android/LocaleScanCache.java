@@ -0,0 +1,160 @@
+package com.madlonkay.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of {@link LocaleScanner} results, so that projects whose directories haven't changed needn't be
+ * rescanned by later builds (including in new daemons, or on CI agents that restore the build directory).
+ * <p>
+ * An entry is only used if its fingerprint is still current; see {@link LocaleScanner.Result#isCurrent()}. The whole
+ * cache is discarded if the set of projects in the build changes, as that changes where each scan is pruned.
+ */
+class LocaleScanCache {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final List<String> projectDirs;
+    private final Map<Path, LocaleScanner.Result> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private LocaleScanCache(File file, List<String> projectDirs) {
+        this.file = file;
+        this.projectDirs = projectDirs;
+    }
+
+    /**
+     * Load the cache from disk. A missing, unreadable, or outdated cache file results in an empty cache.
+     *
+     * @param file        The cache file
+     * @param projectDirs The directories of all projects in the build
+     */
+    static LocaleScanCache load(File file, Collection<Path> projectDirs) {
+        List<String> dirs = new ArrayList<>(projectDirs.size());
+        Util.transformInto(projectDirs, Path::toString, dirs);
+        dirs.sort(null);
+        LocaleScanCache cache = new LocaleScanCache(file, dirs);
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                cache.read(in);
+            } catch (IOException ex) {
+                cache.entries.clear();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return The cached result for the project directory, or null if there is none or it is out of date
+     */
+    LocaleScanner.Result get(Path projectDir) {
+        LocaleScanner.Result result = entries.get(projectDir);
+        return result != null && result.isCurrent() ? result : null;
+    }
+
+    void put(Path projectDir, LocaleScanner.Result result) {
+        entries.put(projectDir, result);
+        dirty = true;
+    }
+
+    /**
+     * Write the cache back to disk if it was modified.
+     */
+    void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            write(out);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return;
+        }
+        int dirCount = in.readInt();
+        List<String> cachedDirs = new ArrayList<>(dirCount);
+        for (int i = 0; i < dirCount; i++) {
+            cachedDirs.add(in.readUTF());
+        }
+        if (!cachedDirs.equals(projectDirs)) {
+            return;
+        }
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            Path projectDir = Paths.get(in.readUTF());
+            long scanTime = in.readLong();
+            int resDirCount = in.readInt();
+            Map<Path, Set<String>> resDirectories = new HashMap<>(resDirCount);
+            for (int j = 0; j < resDirCount; j++) {
+                Path resDir = Paths.get(in.readUTF());
+                int localeCount = in.readInt();
+                Set<String> locales = new HashSet<>(localeCount);
+                for (int k = 0; k < localeCount; k++) {
+                    locales.add(in.readUTF());
+                }
+                resDirectories.put(resDir, locales);
+            }
+            int fingerprintCount = in.readInt();
+            Map<Path, Long> fingerprint = new HashMap<>(fingerprintCount);
+            for (int j = 0; j < fingerprintCount; j++) {
+                fingerprint.put(Paths.get(in.readUTF()), in.readLong());
+            }
+            entries.put(projectDir, new LocaleScanner.Result(resDirectories, fingerprint, scanTime));
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(projectDirs.size());
+        for (String dir : projectDirs) {
+            out.writeUTF(dir);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Path, LocaleScanner.Result> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey().toString());
+            out.writeLong(entry.getValue().getScanTime());
+            Map<Path, Set<String>> resDirectories = entry.getValue().getResDirectories();
+            out.writeInt(resDirectories.size());
+            for (Map.Entry<Path, Set<String>> resDir : resDirectories.entrySet()) {
+                out.writeUTF(resDir.getKey().toString());
+                out.writeInt(resDir.getValue().size());
+                for (String locale : resDir.getValue()) {
+                    out.writeUTF(locale);
+                }
+            }
+            Map<Path, Long> fingerprint = entry.getValue().getFingerprint();
+            out.writeInt(fingerprint.size());
+            for (Map.Entry<Path, Long> dir : fingerprint.entrySet()) {
+                out.writeUTF(dir.getKey().toString());
+                out.writeLong(dir.getValue());
+            }
+        }
+    }
+}
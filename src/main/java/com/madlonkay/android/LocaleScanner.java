@@ -0,0 +1,338 @@
+package com.madlonkay.android;
+
+import org.gradle.api.GradleException;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming filesystem scanner that detects resource locales beneath a project directory.
+ * <p>
+ * Unlike a Gradle {@code FileTree}, the walk is pruned as it goes: nested project directories (which are scanned
+ * on their own) and directories that can't contain source resources are never entered, and no file set is
+ * materialized.
+ * <p>
+ * Locales are detected from directory names only, and each directory is listed once. A directory with a {@code
+ * values} or {@code values-*} child is treated as a {@code res} directory: its {@code values*} children are classified
+ * by name from that listing and none of its other children are entered, so individual resource files are never
+ * enumerated or stat'd.
+ */
+class LocaleScanner {
+
+    private static final Set<String> SKIPPED_DIRECTORIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "build", "test", "androidTest", "node_modules")));
+    private static final String ARCHIVE_RES_PREFIX = "res/";
+    private static final String MODULE_CACHE_DIRECTORY = "files-2.1";
+    private static final Pattern SHA1_DIRECTORY = Pattern.compile("[0-9a-f]{1,40}");
+    private static final String SNAPSHOT_SUFFIX = "-SNAPSHOT";
+    // The coarsest common timestamp resolution (FAT); HFS+ and some network filesystems have 1 second
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
+
+    private LocaleScanner() {
+    }
+
+    /**
+     * Scan a single project directory for resource locales.
+     *
+     * @param projectDir  The project directory to scan
+     * @param projectDirs The directories of all projects in the build; any of these other than {@code projectDir}
+     *                    will be skipped. Paths must be absolute and normalized.
+     * @return The detected {@code res} directories, along with a fingerprint of every directory examined
+     */
+    static Result scan(Path projectDir, Set<Path> projectDirs) {
+        Path root = projectDir.toAbsolutePath().normalize();
+        Result result = new Result();
+        BasicFileAttributes rootAttrs = readDirectoryAttributes(root);
+        if (rootAttrs == null) {
+            return result;
+        }
+        Deque<Path> queue = new ArrayDeque<>();
+        result.fingerprint.put(root, rootAttrs.lastModifiedTime().toMillis());
+        queue.add(root);
+        List<Path> valuesChildren = new ArrayList<>();
+        List<Path> otherChildren = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            Path dir = queue.remove();
+            result.directoriesVisited++;
+            valuesChildren.clear();
+            otherChildren.clear();
+            // The directory is listed once; its values* children (if any) are classified from that listing
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    result.filesExamined++;
+                    if (isValuesDirectory(child)) {
+                        valuesChildren.add(child);
+                    } else {
+                        otherChildren.add(child);
+                    }
+                }
+            } catch (NoSuchFileException | NotDirectoryException | AccessDeniedException ex) {
+                // Unreadable entries can't contribute resources; don't fail the build over them
+                continue;
+            } catch (IOException ex) {
+                throw new GradleException("Could not scan " + root + " for resource locales", ex);
+            }
+            if (!valuesChildren.isEmpty()) {
+                // A res directory; none of its other children are entered
+                Set<String> locales = new HashSet<>();
+                for (Path child : valuesChildren) {
+                    classifyValuesDirectory(child, locales, result);
+                }
+                result.resDirectories.put(dir, locales);
+                continue;
+            }
+            for (Path child : otherChildren) {
+                if (isSkipped(child) || projectDirs.contains(child)) {
+                    continue;
+                }
+                BasicFileAttributes attrs = readDirectoryAttributes(child);
+                if (attrs != null) {
+                    result.fingerprint.put(child, attrs.lastModifiedTime().toMillis());
+                    queue.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Detect locales in a single {@code res} directory by classifying its {@code values-*} children by name.
+     * Only non-empty locale directories count, matching a scan of the files themselves.
+     *
+     * @param dir        The candidate {@code res} directory
+     * @param outLocales The collection into which detected locales will be added
+     * @return Whether {@code dir} looks like a {@code res} directory (has any {@code values*} child)
+     */
+    static boolean scanResDirectory(Path dir, Collection<String> outLocales) {
+        boolean isRes = false;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir, "values*")) {
+            for (Path child : children) {
+                if (isValuesDirectory(child)) {
+                    isRes = true;
+                    classifyValuesDirectory(child, outLocales, null);
+                }
+            }
+        } catch (NoSuchFileException | NotDirectoryException ex) {
+            return false;
+        } catch (IOException ex) {
+            throw new GradleException("Could not scan " + dir + " for resource locales", ex);
+        }
+        return isRes;
+    }
+
+    /**
+     * Whether {@code path} is a {@code values*} directory; stray files such as {@code values-prod.yaml} next to a
+     * project's sources don't make their parent a {@code res} directory.
+     */
+    static boolean isValuesDirectory(Path path) {
+        return Util.isValuesDirectory(path.getFileName().toString()) && Files.isDirectory(path);
+    }
+
+    /**
+     * Add the locale of a {@code values*} directory, if it has one and isn't empty.
+     *
+     * @param result The scan result whose fingerprint should include the directory, or null
+     */
+    private static void classifyValuesDirectory(Path dir, Collection<String> outLocales, Result result) {
+        String locale = Util.resolveLocaleDirectory(dir.getFileName().toString());
+        if (locale == null) {
+            return;
+        }
+        if (result != null) {
+            // The directory's mtime changes when it goes from empty to non-empty or vice versa
+            result.fingerprint.put(dir, lastModified(dir));
+        }
+        if (!outLocales.contains(locale) && isNonEmptyDirectory(dir)) {
+            outLocales.add(locale);
+        }
+    }
+
+    /**
+     * @return The attributes of a directory, without following symbolic links, or null if {@code path} isn't a
+     * readable directory
+     */
+    private static BasicFileAttributes readDirectoryAttributes(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            return attrs.isDirectory() ? attrs : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Detect locales in an archive with a {@code res} directory at its root, such as an AAR, from the names of its
+     * entries alone. Only the archive's central directory is read.
+     *
+     * @param archive The archive
+     * @return The resource locales (e.g. {@code es-rMX}) of non-empty {@code res/values-*} directories
+     */
+    static Set<String> scanArchive(Path archive) throws IOException {
+        Set<String> locales = new HashSet<>();
+        for (String name : ZipDirectory.readEntryNames(archive)) {
+            if (!name.startsWith(ARCHIVE_RES_PREFIX)) {
+                continue;
+            }
+            int slash = name.indexOf('/', ARCHIVE_RES_PREFIX.length());
+            if (slash < 0 || slash == name.length() - 1) {
+                // Not a file in a subdirectory of res
+                continue;
+            }
+            String locale = Util.resolveLocaleDirectory(name.substring(ARCHIVE_RES_PREFIX.length(), slash));
+            if (locale != null) {
+                locales.add(locale);
+            }
+        }
+        return locales;
+    }
+
+    /**
+     * Identify a published module artifact by its coordinates, so that it can be looked up in a {@link
+     * StringSetCache} without touching (or downloading) the file. Released versions are immutable, but snapshots and
+     * artifacts without a version (e.g. from a {@code flatDir}) aren't, so they must be identified by file.
+     *
+     * @return A key identifying the artifact's content, or null if the file must be used instead (see {@link
+     * #archiveKey(Path)})
+     */
+    static String moduleArtifactKey(String group, String module, String version, String classifier) {
+        if (version == null || version.isEmpty() || version.equals("unspecified")
+                || version.endsWith(SNAPSHOT_SUFFIX)) {
+            return null;
+        }
+        return "module:" + group + ':' + module + ':' + version + (classifier == null ? "" : ':' + classifier);
+    }
+
+    /**
+     * @return A key identifying the content of an archive, for use with {@link StringSetCache}. Gradle's module cache
+     * stores every artifact in a directory named for its SHA-1, so that is used where available; other archives (e.g.
+     * from a {@code flatDir}) are identified by path, size, and modification time.
+     */
+    static String archiveKey(Path archive) throws IOException {
+        Path parent = archive.getParent();
+        if (parent != null && SHA1_DIRECTORY.matcher(parent.getFileName().toString()).matches()) {
+            for (Path ancestor = parent.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                Path name = ancestor.getFileName();
+                if (name != null && MODULE_CACHE_DIRECTORY.equals(name.toString())) {
+                    return "sha1:" + parent.getFileName() + '/' + archive.getFileName();
+                }
+            }
+        }
+        return StringSetCache.fileKey(archive);
+    }
+
+    static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private static boolean isNonEmptyDirectory(Path dir) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return entries.iterator().hasNext();
+        } catch (IOException ex) {
+            // Not a directory, or unreadable
+            return false;
+        }
+    }
+
+    static boolean isSkipped(Path dir) {
+        String name = dir.getFileName().toString();
+        return name.startsWith(".") || SKIPPED_DIRECTORIES.contains(name);
+    }
+
+    /**
+     * The outcome of scanning one project directory.
+     * <p>
+     * The fingerprint holds the modification time of every directory that was read during the scan. Adding or
+     * removing a directory entry changes its parent's modification time, so if none of these have changed then a
+     * rescan would find exactly the same {@code res} directories and locales. That only holds for modification times
+     * older than the scan, though: a directory changed again within the timestamp granularity of when it was read
+     * would keep its recorded time. Such directories are never considered current.
+     * <p>
+     * The counts of directories visited and directory entries examined describe the scan that produced the result;
+     * they are zero for results restored from the on-disk cache.
+     */
+    static final class Result {
+        private final Map<Path, Set<String>> resDirectories;
+        private final Map<Path, Long> fingerprint;
+        private final long scanTime;
+        private int directoriesVisited;
+        private int filesExamined;
+
+        Result() {
+            this(new HashMap<>(), new HashMap<>(), System.currentTimeMillis());
+        }
+
+        /**
+         * @param scanTime When the scan started, in milliseconds since the epoch
+         */
+        Result(Map<Path, Set<String>> resDirectories, Map<Path, Long> fingerprint, long scanTime) {
+            this.resDirectories = resDirectories;
+            this.fingerprint = fingerprint;
+            this.scanTime = scanTime;
+        }
+
+        Map<Path, Set<String>> getResDirectories() {
+            return Collections.unmodifiableMap(resDirectories);
+        }
+
+        Map<Path, Long> getFingerprint() {
+            return Collections.unmodifiableMap(fingerprint);
+        }
+
+        int getDirectoriesVisited() {
+            return directoriesVisited;
+        }
+
+        int getFilesExamined() {
+            return filesExamined;
+        }
+
+        Set<String> getLocales() {
+            Set<String> locales = new HashSet<>();
+            for (Set<String> dirLocales : resDirectories.values()) {
+                locales.addAll(dirLocales);
+            }
+            return locales;
+        }
+
+        /**
+         * Whether the filesystem still matches this result's fingerprint.
+         */
+        boolean isCurrent() {
+            long newest = scanTime - MTIME_GRANULARITY_MILLIS;
+            for (Map.Entry<Path, Long> entry : fingerprint.entrySet()) {
+                if (entry.getValue() >= newest || lastModified(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long getScanTime() {
+            return scanTime;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.madlonkay.android;
+
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Build-scoped owner of the resource locales detected across all projects in a build.
+ * <p>
+ * Exactly one instance exists per {@link Gradle} build invocation, so nothing leaks from one build into the next in
+ * a long-lived daemon. Projects may contribute scan results concurrently, and the aggregated locale set is computed
+ * lazily, at most once per build, which makes it safe to use with parallel project configuration.
+ * <p>
+ * Contributed results also form an index of directory to resource locales, so that later passes over specific
+ * {@code res} directories are lookups rather than another enumeration of the filesystem.
+ */
+class LocaleService {
+
+    private static final Map<Gradle, LocaleService> INSTANCES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<Path, LocaleScanner.Result> results = new ConcurrentHashMap<>();
+    private final Map<Path, Set<String>> resDirectoryIndex = new ConcurrentHashMap<>();
+    private volatile Set<String> locales;
+    private boolean populated;
+    private final Map<File, StringSetCache> caches = new ConcurrentHashMap<>();
+
+    private LocaleService() {
+    }
+
+    /**
+     * @return The service for the build that the specified project belongs to
+     */
+    static LocaleService get(Project project) {
+        return INSTANCES.computeIfAbsent(project.getGradle(), gradle -> new LocaleService());
+    }
+
+    /**
+     * Record the scan result for a project directory. Safe to call concurrently.
+     */
+    void contribute(Path projectDir, LocaleScanner.Result result) {
+        results.put(projectDir, result);
+        // Every directory the scan read but didn't classify as a res directory is known to hold no locales
+        for (Path dir : result.getFingerprint().keySet()) {
+            resDirectoryIndex.putIfAbsent(dir, Collections.emptySet());
+        }
+        resDirectoryIndex.putAll(result.getResDirectories());
+        locales = null;
+    }
+
+    /**
+     * Get the {@code res} directories found by the scans of a set of projects.
+     *
+     * @param projectDirs The absolute, normalized directories of the projects
+     * @return The projects' {@code res} directories, mapped to their locales
+     */
+    Map<Path, Set<String>> getResDirectories(Collection<Path> projectDirs) {
+        Map<Path, Set<String>> resDirectories = new HashMap<>();
+        for (Path projectDir : projectDirs) {
+            LocaleScanner.Result result = results.get(projectDir);
+            if (result != null) {
+                for (Map.Entry<Path, Set<String>> entry : result.getResDirectories().entrySet()) {
+                    resDirectories.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return resDirectories;
+    }
+
+    /**
+     * Get the locales of a single {@code res} directory. This is answered from the index when the directory was
+     * covered by a contributed scan; otherwise (e.g. for generated resources, or directories outside of all
+     * projects) just that directory is inspected, and the result is added to the index.
+     *
+     * @param resDir An absolute, normalized path
+     * @return An unmodifiable set of resource locales (e.g. {@code es-rMX})
+     */
+    Set<String> getResDirectoryLocales(Path resDir) {
+        return resDirectoryIndex.computeIfAbsent(resDir, dir -> {
+            Set<String> dirLocales = new HashSet<>();
+            LocaleScanner.scanResDirectory(dir, dirLocales);
+            return Collections.unmodifiableSet(dirLocales);
+        });
+    }
+
+    /**
+     * @return The cache stored in the file, shared by all projects in the build; it is loaded at most once per build
+     */
+    StringSetCache getCache(File file) {
+        return caches.computeIfAbsent(file, StringSetCache::load);
+    }
+
+    /**
+     * @return The cache stored in the file, shared by all projects in the build, keeping only the entries used by this
+     * build when saved; it is loaded at most once per build
+     */
+    StringSetCache getBuildCache(File file) {
+        return caches.computeIfAbsent(file, f -> StringSetCache.load(f, true));
+    }
+
+    /**
+     * Get the locales detected in all projects, populating the service first if this is the first request in the
+     * build. Concurrent callers block until the first has finished populating.
+     *
+     * @param populator Called at most once per build to {@link #contribute(Path, LocaleScanner.Result)} results
+     * @return An unmodifiable set of resource locales (e.g. {@code es-rMX})
+     */
+    Set<String> getLocales(Consumer<LocaleService> populator) {
+        Set<String> result = locales;
+        if (result == null) {
+            synchronized (this) {
+                result = locales;
+                if (result == null) {
+                    if (!populated) {
+                        populated = true;
+                        populator.accept(this);
+                    }
+                    Set<String> union = new HashSet<>();
+                    for (LocaleScanner.Result projectResult : results.values()) {
+                        union.addAll(projectResult.getLocales());
+                    }
+                    result = Collections.unmodifiableSet(union);
+                    locales = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package com.madlonkay.android;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Daemon-resident index of {@link LocaleScanner} results, kept current by filesystem watches rather than by
+ * revalidating fingerprints on every build.
+ * <p>
+ * One index exists per root project directory for the life of the plugin's class loader, which Gradle reuses across
+ * builds in the same daemon. Every directory read by a project's scan is watched for entries being created or
+ * deleted; pending events are drained once per build by {@link #refresh()}, and a project is dropped from the index
+ * (and so rescanned) only when a directory was created or deleted beneath it, or an entry of one of its {@code
+ * values*} directories was. Lookups are then a map access.
+ * <p>
+ * If watching isn't available (including where the JDK only offers a polling implementation, whose delay could serve
+ * stale results), a watch can't be registered, or events overflow, the affected results are simply not served, and
+ * callers fall back to a scan. A root whose watches can't be registered (e.g. because the OS limit on watches has been
+ * reached) isn't watched again for the life of the daemon, rather than retrying on every build.
+ * <p>
+ * Only the indexes of the {@value #MAX_INDEXES} most recently built roots are kept; older ones are closed, releasing
+ * their watches.
+ */
+class LocaleWatchIndex {
+
+    static final int MAX_INDEXES = 4;
+
+    private static final Map<Path, LocaleWatchIndex> INSTANCES = new LinkedHashMap<Path, LocaleWatchIndex>(
+            MAX_INDEXES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LocaleWatchIndex> eldest) {
+            if (size() > MAX_INDEXES) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+    private static final Set<Path> UNWATCHABLE_ROOTS = ConcurrentHashMap.newKeySet();
+    private static final String POLLING_WATCH_SERVICE = "PollingWatchService";
+
+    private final Path rootDir;
+    private final Set<Path> projectDirs;
+    private WatchService watchService;
+    private final Map<Path, LocaleScanner.Result> results = new ConcurrentHashMap<>();
+    private final Map<Path, List<WatchKey>> projectKeys = new HashMap<>();
+    private final Map<WatchKey, Path> keyProjects = new HashMap<>();
+
+    private LocaleWatchIndex(Path rootDir, Set<Path> projectDirs, WatchService watchService) {
+        this.rootDir = rootDir;
+        this.projectDirs = projectDirs;
+        this.watchService = watchService;
+    }
+
+    /**
+     * Get the index of a build, creating it if this is the first build of the root project in this daemon or if the
+     * projects of the build have changed, as that changes where each scan is pruned.
+     *
+     * @param rootDir     The root project directory
+     * @param projectDirs The directories of all projects in the build
+     */
+    static synchronized LocaleWatchIndex get(Path rootDir, Set<Path> projectDirs) {
+        LocaleWatchIndex index = INSTANCES.get(rootDir);
+        if (index != null && index.projectDirs.equals(projectDirs)) {
+            return index;
+        }
+        if (index != null) {
+            index.close();
+        }
+        WatchService watchService = UNWATCHABLE_ROOTS.contains(rootDir) ? null : newWatchService();
+        index = new LocaleWatchIndex(rootDir, Collections.unmodifiableSet(new HashSet<>(projectDirs)), watchService);
+        INSTANCES.put(rootDir, index);
+        return index;
+    }
+
+    /**
+     * @return Whether the index can serve results at all
+     */
+    synchronized boolean isWatching() {
+        return watchService != null;
+    }
+
+    /**
+     * Apply the filesystem events received since the last refresh, dropping the results they affect. Call this once
+     * before a batch of lookups.
+     */
+    synchronized void refresh() {
+        if (watchService == null) {
+            return;
+        }
+        WatchKey key;
+        try {
+            while ((key = watchService.poll()) != null) {
+                List<WatchEvent<?>> events = key.pollEvents();
+                boolean valid = key.reset();
+                handleEvents(keyProjects.get(key), (Path) key.watchable(), events, valid);
+            }
+        } catch (ClosedWatchServiceException ex) {
+            results.clear();
+        }
+    }
+
+    /**
+     * Drop the results affected by the events of one watched directory.
+     *
+     * @param projectDir The project the directory belongs to, or null if it is no longer indexed
+     * @param valid      Whether the directory is still watched
+     */
+    synchronized void handleEvents(Path projectDir, Path dir, List<WatchEvent<?>> events, boolean valid) {
+        boolean changed = false;
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                invalidateAll();
+                return;
+            }
+            if (projectDir != null && isRelevant(dir, (Path) event.context(), event.kind(),
+                    results.get(projectDir))) {
+                changed = true;
+            }
+        }
+        if (!valid || changed) {
+            // The directory is gone, or the project's scan is out of date
+            invalidate(projectDir);
+        }
+    }
+
+    /**
+     * @return The indexed result for the project directory, or null if it must be scanned
+     */
+    LocaleScanner.Result get(Path projectDir) {
+        return results.get(projectDir);
+    }
+
+    /**
+     * Index a project's scan result, watching every directory it read. The result isn't indexed if any watch can't
+     * be registered, or if the filesystem changed before the watches were in place.
+     */
+    synchronized void put(Path projectDir, LocaleScanner.Result result) {
+        if (watchService == null) {
+            return;
+        }
+        invalidate(projectDir);
+        List<WatchKey> keys = new ArrayList<>();
+        projectKeys.put(projectDir, keys);
+        try {
+            for (Path dir : result.getFingerprint().keySet()) {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                keys.add(key);
+                keyProjects.put(key, projectDir);
+            }
+        } catch (NoSuchFileException ex) {
+            // Deleted since the scan
+            invalidate(projectDir);
+            return;
+        } catch (IOException | ClosedWatchServiceException ex) {
+            // E.g. the OS limit on watches has been reached; retrying in later builds would only fail again
+            UNWATCHABLE_ROOTS.add(rootDir);
+            close();
+            return;
+        }
+        if (result.isCurrent()) {
+            results.put(projectDir, result);
+        } else {
+            invalidate(projectDir);
+        }
+    }
+
+    /**
+     * Whether an event could change a scan result: a directory being created or deleted, or any {@code values*}
+     * directory or entry within one (files don't affect the scan, except in {@code values*} directories, where they
+     * determine whether the locale counts).
+     */
+    private static boolean isRelevant(Path dir, Path name, WatchEvent.Kind<?> kind, LocaleScanner.Result result) {
+        if (result == null || name == null) {
+            return false;
+        }
+        Path dirName = dir.getFileName();
+        if (dirName != null && Util.isValuesDirectory(dirName.toString())) {
+            return true;
+        }
+        Path child = dir.resolve(name);
+        if (Util.isValuesDirectory(name.toString())) {
+            // A deleted entry can't be checked, so assume it was a directory
+            return kind == StandardWatchEventKinds.ENTRY_DELETE || Files.isDirectory(child);
+        }
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            return Files.isDirectory(child);
+        }
+        return result.getFingerprint().containsKey(child);
+    }
+
+    private void invalidate(Path projectDir) {
+        if (projectDir == null) {
+            return;
+        }
+        results.remove(projectDir);
+        List<WatchKey> keys = projectKeys.remove(projectDir);
+        if (keys != null) {
+            for (WatchKey key : keys) {
+                key.cancel();
+                keyProjects.remove(key);
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        for (Path projectDir : new ArrayList<>(projectKeys.keySet())) {
+            invalidate(projectDir);
+        }
+        results.clear();
+    }
+
+    private synchronized void close() {
+        results.clear();
+        projectKeys.clear();
+        keyProjects.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * @return A native watch service, or null if there isn't one
+     */
+    private static WatchService newWatchService() {
+        WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException ex) {
+            return null;
+        }
+        if (service.getClass().getName().endsWith(POLLING_WATCH_SERVICE)) {
+            try {
+                service.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+            return null;
+        }
+        return service;
+    }
+}
@@ -0,0 +1,292 @@
+package com.madlonkay.android;
+
+/**
+ * Hand-written parser of Android resource qualifier strings, e.g. the {@code en-rUS-land-v21} of
+ * {@code values-en-rUS-land-v21}.
+ * <p>
+ * Qualifiers are validated against the full grammar, in the order that aapt requires, so that locales combined with
+ * other qualifiers are found while directories that aren't valid resource directories are rejected. Parsing works on
+ * offsets into the original string and doesn't allocate.
+ */
+final class ResourceQualifiers {
+
+    /**
+     * Returned by {@link #findLocale(CharSequence, int)} for valid qualifiers without a locale.
+     */
+    static final long NO_LOCALE = -1;
+
+    /**
+     * Returned by {@link #findLocale(CharSequence, int)} for strings that aren't valid qualifiers.
+     */
+    static final long INVALID = -2;
+
+    private static final int MCC = 0;
+    private static final int MNC = 1;
+    private static final int LOCALE = 2;
+
+    /**
+     * Keyword qualifiers following the locale, in order. Numeric qualifiers (smallest width, available width and
+     * height, numeric density, screen dimensions, and version) are matched in {@link #matchesOther(CharSequence, int,
+     * int, int)} instead.
+     */
+    private static final String[][] OTHER_QUALIFIERS = {
+            {"ldrtl", "ldltr"},
+            {}, // Smallest width: sw<N>dp
+            {}, // Available width: w<N>dp
+            {}, // Available height: h<N>dp
+            {"small", "normal", "large", "xlarge"},
+            {"long", "notlong"},
+            {"round", "notround"},
+            {"widecg", "nowidecg"},
+            {"highdr", "lowdr"},
+            {"port", "land", "square"},
+            {"car", "desk", "television", "appliance", "watch", "vrheadset"},
+            {"night", "notnight"},
+            {"ldpi", "mdpi", "tvdpi", "hdpi", "xhdpi", "xxhdpi", "xxxhdpi", "nodpi", "anydpi"}, // Or <N>dpi
+            {"notouch", "stylus", "finger"},
+            {"keysexposed", "keyshidden", "keyssoft"},
+            {"nokeys", "qwerty", "12key"},
+            {"navexposed", "navhidden"},
+            {"nonav", "dpad", "trackball", "wheel"},
+            {}, // Screen dimensions: <N>x<N>
+            {}, // Version: v<N>
+    };
+    private static final int SMALLEST_WIDTH = 1;
+    private static final int AVAILABLE_WIDTH = 2;
+    private static final int AVAILABLE_HEIGHT = 3;
+    private static final int DENSITY = 12;
+    private static final int SCREEN_DIMENSIONS = 18;
+    private static final int VERSION = 19;
+
+    /**
+     * Would be a valid three-letter language, but is actually the UI mode qualifier.
+     */
+    private static final String UI_MODE_CAR = "car";
+
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+    private static final int ALPHA = LOWER | UPPER;
+    private static final int DIGIT = 4;
+    private static final int ALPHANUMERIC = ALPHA | DIGIT;
+
+    private ResourceQualifiers() {
+    }
+
+    /**
+     * Find the locale in a qualifier string.
+     *
+     * @param s    The string
+     * @param from The offset at which the qualifiers start (e.g. after {@code values-})
+     * @return The locale's start and end offsets, packed by {@link #pack(int, int)}; {@link #NO_LOCALE} if the
+     * qualifiers are valid but have no locale; or {@link #INVALID}
+     */
+    static long findLocale(CharSequence s, int from) {
+        int length = s.length();
+        long locale = NO_LOCALE;
+        int stage = MCC;
+        int pos = from;
+        while (pos < length) {
+            int end = indexOf(s, '-', pos, length);
+            if (end == pos) {
+                return INVALID;
+            }
+            int localeEnd;
+            if (stage <= MCC && isKeywordNumber(s, pos, end, "mcc", 3, 3)) {
+                stage = MNC;
+            } else if (stage <= MNC && isKeywordNumber(s, pos, end, "mnc", 1, 3)) {
+                stage = LOCALE;
+            } else if (stage <= LOCALE && (localeEnd = localeEnd(s, pos, length)) >= 0) {
+                locale = pack(pos, localeEnd);
+                end = localeEnd;
+                stage = LOCALE + 1;
+            } else {
+                int matched = -1;
+                for (int i = Math.max(stage - LOCALE - 1, 0); i < OTHER_QUALIFIERS.length; i++) {
+                    if (matchesOther(s, pos, end, i)) {
+                        matched = i;
+                        break;
+                    }
+                }
+                if (matched < 0) {
+                    return INVALID;
+                }
+                stage = LOCALE + 1 + matched + 1;
+            }
+            if (end == length) {
+                return locale;
+            }
+            pos = end + 1;
+            if (pos == length) {
+                // Trailing separator
+                return INVALID;
+            }
+        }
+        return locale;
+    }
+
+    /**
+     * Parse a locale qualifier: either the legacy form ({@code en}, {@code fil}, {@code en-rUS}) or the BCP 47 form
+     * ({@code b+sr+Latn}, {@code b+es+419}).
+     *
+     * @param s     The string
+     * @param start The offset at which the locale qualifier would start
+     * @param limit The end of the qualifiers
+     * @return The offset at which the locale qualifier ends, or -1 if there isn't one
+     */
+    static int localeEnd(CharSequence s, int start, int limit) {
+        int pos;
+        if (start + 2 <= limit && s.charAt(start) == 'b' && s.charAt(start + 1) == '+') {
+            pos = start + 2;
+            int languageEnd = run(s, pos, limit, ALPHA);
+            if (languageEnd - pos < 2 || languageEnd - pos > 8) {
+                return -1;
+            }
+            pos = languageEnd;
+            while (pos < limit && s.charAt(pos) == '+') {
+                int subtagEnd = run(s, pos + 1, limit, ALPHANUMERIC);
+                if (subtagEnd - pos - 1 < 1 || subtagEnd - pos - 1 > 8) {
+                    return -1;
+                }
+                pos = subtagEnd;
+            }
+        } else {
+            pos = run(s, start, limit, LOWER);
+            int languageLength = pos - start;
+            if (languageLength < 2 || languageLength > 3
+                    || (languageLength == 3 && regionEquals(s, start, UI_MODE_CAR))) {
+                return -1;
+            }
+            // Optional region: -rXX
+            if (pos + 4 <= limit && s.charAt(pos) == '-' && s.charAt(pos + 1) == 'r'
+                    && run(s, pos + 2, pos + 4, UPPER) == pos + 4
+                    && (pos + 4 == limit || s.charAt(pos + 4) == '-')) {
+                pos += 4;
+            }
+        }
+        return pos == limit || s.charAt(pos) == '-' ? pos : -1;
+    }
+
+    /**
+     * Convert a locale qualifier to a BCP 47 language tag in a single pass, e.g. {@code es-rMX} to {@code es-MX} and
+     * {@code b+sr+Latn} to {@code sr-Latn}.
+     */
+    static String toBcp47(CharSequence qualifier) {
+        int length = qualifier.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = length >= 2 && qualifier.charAt(0) == 'b' && qualifier.charAt(1) == '+' ? 2 : 0;
+        for (; i < length; i++) {
+            char c = qualifier.charAt(i);
+            if (c == '+') {
+                sb.append('-');
+            } else if (c == '-' && i + 1 < length && qualifier.charAt(i + 1) == 'r') {
+                sb.append('-');
+                i++;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static long pack(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    static int start(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    static int end(long packed) {
+        return (int) packed;
+    }
+
+    private static boolean matchesOther(CharSequence s, int start, int end, int index) {
+        switch (index) {
+            case SMALLEST_WIDTH:
+                return isKeywordNumber(s, start, end - 2, "sw", 1, 5) && regionEquals(s, end - 2, "dp");
+            case AVAILABLE_WIDTH:
+                return isKeywordNumber(s, start, end - 2, "w", 1, 5) && regionEquals(s, end - 2, "dp");
+            case AVAILABLE_HEIGHT:
+                return isKeywordNumber(s, start, end - 2, "h", 1, 5) && regionEquals(s, end - 2, "dp");
+            case DENSITY:
+                if (end - start > 3 && regionEquals(s, end - 3, "dpi") && run(s, start, end - 3, DIGIT) == end - 3) {
+                    return true;
+                }
+                break;
+            case SCREEN_DIMENSIONS:
+                int x = run(s, start, end, DIGIT);
+                return x > start && x < end && s.charAt(x) == 'x' && run(s, x + 1, end, DIGIT) == end && x + 1 < end;
+            case VERSION:
+                // v<N>, optionally with a minor version
+                if (end - start < 2 || s.charAt(start) != 'v') {
+                    return false;
+                }
+                int major = run(s, start + 1, end, DIGIT);
+                if (major == start + 1) {
+                    return false;
+                }
+                return major == end || (s.charAt(major) == '.' && major + 1 < end
+                        && run(s, major + 1, end, DIGIT) == end);
+            default:
+                break;
+        }
+        for (String keyword : OTHER_QUALIFIERS[index]) {
+            if (end - start == keyword.length() && regionEquals(s, start, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the range is {@code keyword} followed by a number of {@code minDigits} to {@code maxDigits} digits.
+     */
+    private static boolean isKeywordNumber(CharSequence s, int start, int end, String keyword, int minDigits,
+                                           int maxDigits) {
+        int digitsStart = start + keyword.length();
+        if (end < digitsStart || !regionEquals(s, start, keyword)) {
+            return false;
+        }
+        int digits = end - digitsStart;
+        return digits >= minDigits && digits <= maxDigits && run(s, digitsStart, end, DIGIT) == end;
+    }
+
+    private static boolean regionEquals(CharSequence s, int start, String expected) {
+        if (start < 0 || start + expected.length() > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (s.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return The offset of the first character from {@code start} (up to {@code limit}) not in the class
+     */
+    private static int run(CharSequence s, int start, int limit, int charClass) {
+        int i = start;
+        while (i < limit) {
+            char c = s.charAt(i);
+            boolean matches = ((charClass & LOWER) != 0 && c >= 'a' && c <= 'z')
+                    || ((charClass & UPPER) != 0 && c >= 'A' && c <= 'Z')
+                    || ((charClass & DIGIT) != 0 && c >= '0' && c <= '9');
+            if (!matches) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+}
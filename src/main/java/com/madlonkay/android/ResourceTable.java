@@ -0,0 +1,143 @@
+package com.madlonkay.android;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reader of the locales present in a compiled resource table ({@code resources.arsc}), without the Android SDK.
+ * <p>
+ * Only chunk headers are walked: the table's packages, and the type chunks within them, whose headers hold the
+ * configuration (including locale) of their resources. String pools and resource entries are skipped over.
+ */
+final class ResourceTable {
+
+    static final String ENTRY_NAME = "resources.arsc";
+
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int RES_TABLE_TYPE_TYPE = 0x0201;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int TYPE_CONFIG_OFFSET = 20;
+    private static final int CONFIG_LANGUAGE_OFFSET = 8;
+    private static final int CONFIG_COUNTRY_OFFSET = 10;
+    private static final int CONFIG_SCRIPT_OFFSET = 36;
+    private static final int CONFIG_SCRIPT_END = CONFIG_SCRIPT_OFFSET + 4;
+
+    private ResourceTable() {
+    }
+
+    /**
+     * @return The resource locales (e.g. {@code es-rMX}, {@code b+sr+Latn}) present in the APK's resource table;
+     * empty if it has none
+     */
+    static Set<String> readApkLocales(Path apk) throws IOException {
+        ByteBuffer table = ZipDirectory.readEntry(apk, ENTRY_NAME);
+        return table == null ? new TreeSet<>() : readLocales(table);
+    }
+
+    /**
+     * @param table The content of a {@code resources.arsc} file
+     * @return The resource locales present in the table
+     */
+    static Set<String> readLocales(ByteBuffer table) throws IOException {
+        ByteBuffer buffer = table.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Set<String> locales = new TreeSet<>();
+        int base = buffer.position();
+        if (buffer.remaining() < CHUNK_HEADER_SIZE || (buffer.getShort(base) & 0xFFFF) != RES_TABLE_TYPE) {
+            throw new IOException("Not a resource table");
+        }
+        int tableEnd = base + chunkSize(buffer, base, buffer.limit());
+        // The table's children: the global string pool, and one chunk per package
+        for (int pos = base + headerSize(buffer, base); pos < tableEnd; pos += chunkSize(buffer, pos, tableEnd)) {
+            if ((buffer.getShort(pos) & 0xFFFF) != RES_TABLE_PACKAGE_TYPE) {
+                continue;
+            }
+            int packageEnd = pos + chunkSize(buffer, pos, tableEnd);
+            // The package's children: type and key string pools, then type spec and type chunks
+            for (int child = pos + headerSize(buffer, pos); child < packageEnd;
+                 child += chunkSize(buffer, child, packageEnd)) {
+                if ((buffer.getShort(child) & 0xFFFF) == RES_TABLE_TYPE_TYPE) {
+                    String locale = readConfigLocale(buffer, child + TYPE_CONFIG_OFFSET);
+                    if (locale != null) {
+                        locales.add(locale);
+                    }
+                }
+            }
+        }
+        return locales;
+    }
+
+    /**
+     * Decode the locale of a {@code ResTable_config}.
+     *
+     * @return The resource locale, or null for a config without a language
+     */
+    private static String readConfigLocale(ByteBuffer buffer, int config) {
+        int configSize = buffer.getInt(config);
+        String language = unpackCode(buffer, config + CONFIG_LANGUAGE_OFFSET, 'a');
+        if (language == null) {
+            return null;
+        }
+        String region = unpackCode(buffer, config + CONFIG_COUNTRY_OFFSET, '0');
+        String script = null;
+        if (configSize >= CONFIG_SCRIPT_END && buffer.get(config + CONFIG_SCRIPT_OFFSET) != 0) {
+            StringBuilder sb = new StringBuilder(4);
+            for (int i = 0; i < 4; i++) {
+                sb.append((char) buffer.get(config + CONFIG_SCRIPT_OFFSET + i));
+            }
+            script = sb.toString();
+        }
+        // Use the BCP 47-style resource qualifier wherever the legacy form can't express the locale
+        if (script != null || language.length() > 2 || (region != null && region.length() > 2)) {
+            StringBuilder sb = new StringBuilder("b+").append(language);
+            if (script != null) {
+                sb.append('+').append(script);
+            }
+            if (region != null) {
+                sb.append('+').append(region);
+            }
+            return sb.toString();
+        }
+        return region == null ? language : language + "-r" + region;
+    }
+
+    /**
+     * Decode a language or region code. Two-character codes are stored as is; three-character codes are packed into
+     * two bytes as 5-bit offsets from {@code base}, with the high bit of the first byte set.
+     *
+     * @return The code, or null if unset
+     */
+    private static String unpackCode(ByteBuffer buffer, int offset, char base) {
+        int first = buffer.get(offset) & 0xFF;
+        int second = buffer.get(offset + 1) & 0xFF;
+        if (first == 0) {
+            return null;
+        }
+        if ((first & 0x80) == 0) {
+            return new String(new char[] {(char) first, (char) second});
+        }
+        char c1 = (char) (base + (second & 0x1F));
+        char c2 = (char) (base + (((second & 0xE0) >> 5) | ((first & 0x03) << 3)));
+        char c3 = (char) (base + ((first & 0x7C) >> 2));
+        return new String(new char[] {c1, c2, c3});
+    }
+
+    private static int headerSize(ByteBuffer buffer, int chunk) {
+        return buffer.getShort(chunk + 2) & 0xFFFF;
+    }
+
+    private static int chunkSize(ByteBuffer buffer, int chunk, int limit) throws IOException {
+        if (chunk + CHUNK_HEADER_SIZE > limit) {
+            throw new IOException("Truncated resource table chunk at " + chunk);
+        }
+        int size = buffer.getInt(chunk + 4);
+        if (size < CHUNK_HEADER_SIZE || chunk + size > limit) {
+            throw new IOException("Invalid resource table chunk size at " + chunk);
+        }
+        return size;
+    }
+}
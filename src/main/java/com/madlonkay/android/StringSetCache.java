@@ -0,0 +1,149 @@
+package com.madlonkay.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of sets of strings derived from file content, e.g. the resource locales found in an AAR artifact. Keys
+ * must identify the content they were derived from (e.g. by checksum, or see {@link #fileKey(Path)}), so entries never
+ * go stale.
+ * <p>
+ * Keys that change whenever a file does leave old entries behind; a cache that is only used by one build at a time can
+ * drop them by only retaining the entries used since it was loaded.
+ */
+class StringSetCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final Map<String, Set<String>> entries = new ConcurrentHashMap<>();
+    private final Set<String> used;
+    private volatile boolean dirty;
+
+    private StringSetCache(File file, boolean retainUsedOnly) {
+        this.file = file;
+        this.used = retainUsedOnly ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * Load the cache from disk. A missing, unreadable, or outdated cache file results in an empty cache.
+     */
+    static StringSetCache load(File file) {
+        return load(file, false);
+    }
+
+    /**
+     * Load the cache from disk.
+     *
+     * @param retainUsedOnly Whether {@link #save()} should only write the entries that have been read or written since
+     *                       loading
+     */
+    static StringSetCache load(File file, boolean retainUsedOnly) {
+        StringSetCache cache = new StringSetCache(file, retainUsedOnly);
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                cache.read(in);
+            } catch (IOException ex) {
+                cache.entries.clear();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return The cached set for the key, or null if there is none
+     */
+    Set<String> get(String key) {
+        Set<String> values = entries.get(key);
+        if (values != null && used != null && used.add(key)) {
+            // Entries that aren't used again are dropped on save
+            dirty = true;
+        }
+        return values;
+    }
+
+    void put(String key, Set<String> values) {
+        entries.put(key, Collections.unmodifiableSet(new HashSet<>(values)));
+        if (used != null) {
+            used.add(key);
+        }
+        dirty = true;
+    }
+
+    /**
+     * @return A key identifying a file's content by its path, size, and modification time, which is far cheaper than
+     * a checksum as the file needn't be read
+     */
+    static String fileKey(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return "file:" + path.toAbsolutePath() + ':' + attrs.size() + ':' + attrs.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Write the cache back to disk if it was modified. Entries written concurrently by other processes since this
+     * cache was loaded are lost, which only costs them a rescan.
+     */
+    synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            write(out);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return;
+        }
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String key = in.readUTF();
+            int valueCount = in.readInt();
+            Set<String> values = new HashSet<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(in.readUTF());
+            }
+            entries.put(key, Collections.unmodifiableSet(values));
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Set<String>> retained = entries;
+        if (used != null) {
+            retained = new HashMap<>(entries);
+            retained.keySet().retainAll(used);
+        }
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(retained.size());
+        for (Map.Entry<String, Set<String>> entry : retained.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                out.writeUTF(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.madlonkay.android;
+
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+
+/**
+ * The AppCompat library, if any, that a variant compiles against. This determines the superclass of the generated
+ * activity and where annotations such as {@code RequiresApi} come from.
+ */
+public enum SupportLibrary {
+    NONE(null, null, null, null),
+    SUPPORT("com.android.support", "appcompat-v7", "android.support.v7.app", "android.support.annotation"),
+    ANDROIDX("androidx.appcompat", "appcompat", "androidx.appcompat.app", "androidx.annotation");
+
+    private final String group;
+    private final String name;
+    private final String activityPackage;
+    private final String annotationPackage;
+
+    SupportLibrary(String group, String name, String activityPackage, String annotationPackage) {
+        this.group = group;
+        this.name = name;
+        this.activityPackage = activityPackage;
+        this.annotationPackage = annotationPackage;
+    }
+
+    /**
+     * @return The package of {@code AppCompatActivity}, or null if there is no support library
+     */
+    public String getActivityPackage() {
+        return activityPackage;
+    }
+
+    /**
+     * @return The package of the support annotations, or null if there is no support library
+     */
+    public String getAnnotationPackage() {
+        return annotationPackage;
+    }
+
+    /**
+     * Detect the AppCompat library among a configuration's declared dependencies (including those inherited from
+     * configurations it extends). AndroidX takes precedence if both are present. Nothing is resolved.
+     */
+    static SupportLibrary detect(Configuration configuration) {
+        SupportLibrary result = NONE;
+        for (Dependency dependency : configuration.getAllDependencies()) {
+            if (ANDROIDX.matches(dependency)) {
+                return ANDROIDX;
+            } else if (SUPPORT.matches(dependency)) {
+                result = SUPPORT;
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(Dependency dependency) {
+        return group != null && group.equals(dependency.getGroup()) && name.equals(dependency.getName());
+    }
+}
@@ -0,0 +1,207 @@
+package com.madlonkay.android;
+
+import org.gradle.api.GradleException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Measures how completely each locale translates the string resources of a set of {@code res} directories.
+ * <p>
+ * The translatable {@code string}, {@code plurals}, and {@code string-array} resources of the default {@code values}
+ * directories are the baseline; a locale's coverage is the fraction of those that its {@code values-*} directories
+ * define. Files are stream-parsed in parallel, and the resource names found in each file are cached by its path, size,
+ * and modification time, so unchanged files are neither read nor parsed again.
+ */
+class TranslationCoverage {
+
+    private static final Set<String> STRING_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "string", "plurals", "string-array")));
+    private static final String DEFAULT_VALUES_DIRECTORY = "values";
+    private static final String XML_SUFFIX = ".xml";
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final double COVERAGE_EPSILON = 1e-9;
+
+    private TranslationCoverage() {
+    }
+
+    /**
+     * Compute the translation coverage of the specified {@code res} directories.
+     *
+     * @param resDirs The {@code res} directories
+     * @param cache   The cache of resource names by file content
+     * @return The coverage of each resource locale (e.g. {@code es-rMX}) found, from 0 to 1. Empty if there are no
+     * default strings to translate.
+     */
+    static Map<String, Double> compute(Collection<Path> resDirs, StringSetCache cache) {
+        // The default locale is represented by the empty string
+        List<StringsFile> files = new ArrayList<>();
+        for (Path resDir : resDirs) {
+            listStringsFiles(resDir, files);
+        }
+
+        Map<StringsFile, Set<String>> names = files.parallelStream()
+                .collect(Collectors.toConcurrentMap(file -> file, file -> readNames(file.path, cache)));
+
+        // Resources are merged across res directories (e.g. overlays, flavors), so names are compared across all of
+        // them rather than per directory
+        Map<String, Set<String>> namesByLocale = new HashMap<>();
+        for (StringsFile file : files) {
+            namesByLocale.computeIfAbsent(file.locale, locale -> new HashSet<>()).addAll(names.get(file));
+        }
+
+        Map<String, Double> coverage = new HashMap<>();
+        Set<String> defaultNames = namesByLocale.getOrDefault("", Collections.emptySet());
+        if (defaultNames.isEmpty()) {
+            return coverage;
+        }
+        for (Map.Entry<String, Set<String>> entry : namesByLocale.entrySet()) {
+            if (entry.getKey().isEmpty()) {
+                continue;
+            }
+            int translated = 0;
+            for (String name : entry.getValue()) {
+                if (defaultNames.contains(name)) {
+                    translated++;
+                }
+            }
+            coverage.put(entry.getKey(), translated / (double) defaultNames.size());
+        }
+        return coverage;
+    }
+
+    private static void listStringsFiles(Path resDir, Collection<StringsFile> outFiles) {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(resDir, DEFAULT_VALUES_DIRECTORY + "*")) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                String locale = name.equals(DEFAULT_VALUES_DIRECTORY) ? "" : Util.resolveLocaleDirectory(name);
+                if (locale == null) {
+                    // Other qualifiers, e.g. values-v21
+                    continue;
+                }
+                try (DirectoryStream<Path> xmlFiles = Files.newDirectoryStream(child, "*" + XML_SUFFIX)) {
+                    for (Path file : xmlFiles) {
+                        outFiles.add(new StringsFile(locale, file));
+                    }
+                } catch (NotDirectoryException ex) {
+                    // Ignore
+                }
+            }
+        } catch (NoSuchFileException | NotDirectoryException ex) {
+            // Nothing to analyze
+        } catch (IOException ex) {
+            throw new GradleException("Could not list resources in " + resDir, ex);
+        }
+    }
+
+    /**
+     * @return The names of the translatable string resources defined in the file, from the cache if possible
+     */
+    private static Set<String> readNames(Path file, StringSetCache cache) {
+        try {
+            String key = StringSetCache.fileKey(file);
+            Set<String> names = cache.get(key);
+            if (names == null) {
+                names = parseNames(Files.readAllBytes(file));
+                cache.put(key, names);
+            }
+            return names;
+        } catch (IOException ex) {
+            throw new GradleException("Could not read " + file, ex);
+        }
+    }
+
+    /**
+     * @param coverage    Coverage by locale, as returned by {@link #compute(Collection, StringSetCache)}
+     * @param minCoverage The minimum coverage, in percent
+     * @return The locales whose coverage is below the minimum; a locale exactly at the minimum is kept
+     */
+    static Set<String> findBelow(Map<String, Double> coverage, int minCoverage) {
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, Double> entry : coverage.entrySet()) {
+            // Allow for rounding, e.g. 7 of 10 strings is 70.00000000000001%
+            if (entry.getValue() * 100 + COVERAGE_EPSILON < minCoverage) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stream-parse the top-level string resources of a {@code values} file. Malformed files yield no names, as aapt
+     * will report them in more detail.
+     */
+    static Set<String> parseNames(byte[] content) {
+        Set<String> names = new HashSet<>();
+        XMLStreamReader reader = null;
+        try (InputStream in = new ByteArrayInputStream(content)) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    // Resources are the children of the root <resources> element
+                    if (depth == 2 && STRING_ELEMENTS.contains(reader.getLocalName())) {
+                        String name = reader.getAttributeValue(null, "name");
+                        if (name != null && !"false".equals(reader.getAttributeValue(null, "translatable"))) {
+                            names.add(name);
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException | IOException ex) {
+            return Collections.emptySet();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // Ignore
+                }
+            }
+        }
+        return names;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    private static final class StringsFile {
+        private final String locale;
+        private final Path path;
+
+        StringsFile(String locale, Path path) {
+            this.locale = locale;
+            this.path = path;
+        }
+    }
+}
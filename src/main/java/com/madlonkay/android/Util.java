@@ -8,15 +8,17 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 
 public class Util {
 
+    private static final String VALUES_DIRECTORY = "values";
     private static final String LOCALE_PREFIX = "values-";
-    private static final Pattern LOCALE_RESOURCE_PATTERN = Pattern.compile("[a-z]{2}(?:-r[A-Z]{2})?|b(?:\\+[a-zA-Z]+)+");
 
+    /**
+     * Whether the string is exactly a locale qualifier, e.g. {@code en}, {@code es-rMX}, or {@code b+sr+Latn}.
+     */
     public static boolean isLocaleQualifier(String s) {
-        return LOCALE_RESOURCE_PATTERN.matcher(s).matches();
+        return ResourceQualifiers.localeEnd(s, 0, s.length()) == s.length();
     }
 
     public static boolean containsLocaleQualifier(Collection<String> c) {
@@ -30,19 +32,46 @@ public class Util {
 
     public static String resolveLocale(File file) {
         File toResolve = file.isDirectory() ? file : file.getParentFile();
-        return resolveLocale(toResolve.getName());
+        return resolveLocaleDirectory(toResolve.getName());
     }
 
-    private static String resolveLocale(String path) {
+    /**
+     * Whether the name is that of a directory holding {@code values} resources, i.e. is {@code values} or
+     * {@code values-*} with qualifiers aapt would accept. Names like {@code values-prod.yaml} don't qualify; the
+     * name alone can't rule out a plain file, so callers with a path should check that it is a directory.
+     */
+    public static boolean isValuesDirectory(String dirName) {
+        if (dirName.equals(VALUES_DIRECTORY)) {
+            return true;
+        }
+        return dirName.startsWith(LOCALE_PREFIX) && dirName.length() > LOCALE_PREFIX.length()
+                && ResourceQualifiers.findLocale(dirName, LOCALE_PREFIX.length()) != ResourceQualifiers.INVALID;
+    }
+
+    /**
+     * Resolve the locale of a resource directory from its name alone, without touching the filesystem.
+     * E.g. {@code values-ja} and {@code values-ja-v21} resolve to {@code ja}; {@code values} and {@code values-v21}
+     * resolve to null.
+     */
+    public static String resolveLocaleDirectory(String path) {
         if (path.startsWith(LOCALE_PREFIX)) {
-            String value = path.substring(LOCALE_PREFIX.length());
-            if (LOCALE_RESOURCE_PATTERN.matcher(value).matches()) {
-                return value;
-            }
+            return substring(path, ResourceQualifiers.findLocale(path, LOCALE_PREFIX.length()));
         }
         return null;
     }
 
+    /**
+     * Extract the locale from a full qualifier string, e.g. {@code es-rMX-land-v21} resolves to {@code es-rMX}.
+     * Qualifiers without a locale (e.g. {@code v21}, or the empty string) resolve to null.
+     */
+    public static String resolveLocaleQualifiers(String qualifiers) {
+        return substring(qualifiers, ResourceQualifiers.findLocale(qualifiers, 0));
+    }
+
+    private static String substring(String s, long range) {
+        return range < 0 ? null : s.substring(ResourceQualifiers.start(range), ResourceQualifiers.end(range));
+    }
+
     public static <T, R> void transformInto(Collection<T> source, Function<T, R> transform, Collection<R> target) {
         for (T item : source) {
             target.add(transform.apply(item));
@@ -50,7 +79,7 @@ public class Util {
     }
 
     public static String toBcp47(String resLocale) {
-        return resLocale.replace("b+", "").replace("-r", "-").replace('+', '-');
+        return ResourceQualifiers.toBcp47(resLocale);
     }
 
     public static String toArrayLiteral(Collection<?> items) {
@@ -90,4 +119,32 @@ public class Util {
         }
         return result;
     }
+
+    /**
+     * Read a comma-separated list property. Items are trimmed, and empty items are dropped.
+     */
+    static List<String> readListProperty(Project project, String key) {
+        Object rawValue = project.findProperty(key);
+        List<String> result = new ArrayList<>();
+        if (rawValue != null) {
+            for (String item : rawValue.toString().split(",")) {
+                item = item.trim();
+                if (!item.isEmpty()) {
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean readBooleanProperty(Project project, String key, boolean defaultValue) {
+        Object rawValue = project.findProperty(key);
+        if (rawValue == null) {
+            return defaultValue;
+        } else if (rawValue instanceof Boolean) {
+            return (Boolean) rawValue;
+        } else {
+            return Boolean.parseBoolean(rawValue.toString());
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package com.madlonkay.android;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+
+/**
+ * Checks packaged APKs for resources in locales other than the supported ones, i.e. compile-time locale
+ * contamination.
+ * <p>
+ * The locales are read from each APK's {@code resources.arsc} directly (see {@link ResourceTable}), so the Android
+ * SDK build tools aren't needed. A report listing the locales of each APK is written on every run.
+ */
+public class VerifyApkLocalesTask extends DefaultTask {
+
+    private final ConfigurableFileCollection apkFiles;
+    private final ListProperty<String> supportedLocales;
+    private final Property<Boolean> failOnUnsupported;
+    private File reportFile;
+
+    @Inject
+    public VerifyApkLocalesTask(ObjectFactory objects) {
+        apkFiles = getProject().files();
+        supportedLocales = objects.listProperty(String.class);
+        failOnUnsupported = objects.property(Boolean.class);
+        failOnUnsupported.set(false);
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public ConfigurableFileCollection getApkFiles() {
+        return apkFiles;
+    }
+
+    /**
+     * The supported locales as BCP 47 language tags, e.g. {@code sr-Latn}.
+     */
+    @Input
+    public ListProperty<String> getSupportedLocales() {
+        return supportedLocales;
+    }
+
+    /**
+     * Whether unsupported locales fail the build; otherwise they are only reported as a warning.
+     */
+    @Input
+    public Property<Boolean> getFailOnUnsupported() {
+        return failOnUnsupported;
+    }
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    @TaskAction
+    public void verify() throws IOException {
+        Set<String> supported = new HashSet<>(supportedLocales.get());
+        Map<String, Set<String>> unsupportedByApk = new TreeMap<>();
+        Files.createDirectories(reportFile.getParentFile().toPath());
+        try (PrintWriter report = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(),
+                StandardCharsets.UTF_8))) {
+            for (File apk : apkFiles) {
+                if (!apk.isFile()) {
+                    continue;
+                }
+                Set<String> locales = ResourceTable.readApkLocales(apk.toPath());
+                Set<String> unsupported = new TreeSet<>();
+                report.println(apk.getName() + ":");
+                for (String locale : locales) {
+                    boolean isSupported = isSupported(Util.toBcp47(locale), supported);
+                    report.println((isSupported ? "  " : "! ") + locale);
+                    if (!isSupported) {
+                        unsupported.add(locale);
+                    }
+                }
+                if (!unsupported.isEmpty()) {
+                    unsupportedByApk.put(apk.getName(), unsupported);
+                }
+            }
+        }
+        if (unsupportedByApk.isEmpty()) {
+            return;
+        }
+        String message = "APKs contain resources for unsupported locales: " + unsupportedByApk
+                + "; see " + reportFile;
+        if (failOnUnsupported.get()) {
+            throw new GradleException(message);
+        } else {
+            getLogger().warn(message);
+        }
+    }
+
+    /**
+     * A locale is supported if it or its language is; resConfigs of just a language keep regional resources for
+     * that language too. Conversely, a locale of just a language is supported if any supported locale has that
+     * language, as aapt keeps language-only resources (e.g. {@code values-es}) as the fallback of regional resConfigs
+     * (e.g. {@code es-rMX}).
+     */
+    static boolean isSupported(String bcp47Locale, Set<String> supported) {
+        if (supported.contains(bcp47Locale)) {
+            return true;
+        }
+        int separator = bcp47Locale.indexOf('-');
+        if (separator > 0) {
+            return supported.contains(bcp47Locale.substring(0, separator));
+        }
+        for (String locale : supported) {
+            if (locale.startsWith(bcp47Locale) && locale.length() > bcp47Locale.length()
+                    && locale.charAt(bcp47Locale.length()) == '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
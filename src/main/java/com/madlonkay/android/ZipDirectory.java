@@ -0,0 +1,245 @@
+package com.madlonkay.android;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Minimal reader of a zip file's central directory.
+ * <p>
+ * Only the end of the archive is read: the end-of-central-directory record, and the central directory it points
+ * to. Listing even a large archive costs two small reads, and a single entry can be read without touching any other.
+ */
+final class ZipDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private ZipDirectory() {
+    }
+
+    /**
+     * @return The names of all entries in the archive, in central directory order
+     */
+    static List<String> readEntryNames(Path zip) throws IOException {
+        List<Entry> entries;
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+            entries = readEntries(channel, zip);
+        }
+        if (entries == null) {
+            return readEntryNamesFallback(zip);
+        }
+        List<String> names = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    /**
+     * Read a single entry's content into a heap buffer; deflated entries are inflated. Nothing is memory-mapped, so
+     * the archive isn't left locked (e.g. on Windows) after the channel is closed.
+     *
+     * @return The content, in little-endian byte order, or null if there is no such entry
+     */
+    static ByteBuffer readEntry(Path zip, String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+            List<Entry> entries = readEntries(channel, zip);
+            if (entries == null) {
+                return readEntryFallback(zip, name);
+            }
+            for (Entry entry : entries) {
+                if (entry.name.equals(name)) {
+                    return readEntry(channel, zip, entry);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The entries of the archive, or null if it is a Zip64 archive
+     */
+    private static List<Entry> readEntries(FileChannel channel, Path zip) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int eocd = findEndOfCentralDirectory(tail);
+        if (eocd < 0) {
+            throw new ZipException("End of central directory not found: " + zip);
+        }
+        int entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+            // Zip64; too rare in Android artifacts to be worth parsing by hand
+            return null;
+        }
+        if (cenOffset + cenSize > fileSize) {
+            throw new ZipException("Invalid central directory: " + zip);
+        }
+        ByteBuffer cen = read(channel, cenOffset, (int) cenSize);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        byte[] nameBuffer = new byte[256];
+        int pos = 0;
+        while (pos + CEN_HEADER_SIZE <= cen.limit()) {
+            if (cen.getInt(pos) != CEN_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry at " + (cenOffset + pos) + ": " + zip);
+            }
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (nameLength > nameBuffer.length) {
+                nameBuffer = new byte[nameLength];
+            }
+            cen.position(pos + CEN_HEADER_SIZE);
+            cen.get(nameBuffer, 0, nameLength);
+            String name = new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, method, compressedSize, size, localHeaderOffset));
+            pos += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static ByteBuffer readEntry(FileChannel channel, Path zip, Entry entry) throws IOException {
+        // The local header's name and extra field lengths may differ from the central directory's
+        ByteBuffer local = read(channel, entry.localHeaderOffset, LOC_HEADER_SIZE);
+        if (local.getInt(0) != LOC_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name + ": " + zip);
+        }
+        long dataOffset = entry.localHeaderOffset + LOC_HEADER_SIZE
+                + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+        if (dataOffset + entry.compressedSize > channel.size() || entry.compressedSize > Integer.MAX_VALUE
+                || entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid entry " + entry.name + ": " + zip);
+        }
+        ByteBuffer data = read(channel, dataOffset, (int) entry.compressedSize);
+        switch (entry.method) {
+            case METHOD_STORED:
+                return data;
+            case METHOD_DEFLATED:
+                byte[] content = new byte[(int) entry.size];
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(data.array(), 0, data.limit());
+                    int length = 0;
+                    while (length < content.length && !inflater.finished()) {
+                        int n = inflater.inflate(content, length, content.length - length);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        length += n;
+                    }
+                    if (length != content.length) {
+                        throw new ZipException("Truncated entry " + entry.name + ": " + zip);
+                    }
+                } catch (DataFormatException ex) {
+                    throw new ZipException("Invalid compressed data in " + entry.name + ": " + zip);
+                } finally {
+                    inflater.end();
+                }
+                return ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name
+                        + ": " + zip);
+        }
+    }
+
+    /**
+     * Scan backwards for the end-of-central-directory signature; it is followed by a variable-length comment.
+     *
+     * @return The offset of the record within {@code tail}, or -1 if not found
+     */
+    private static int findEndOfCentralDirectory(ByteBuffer tail) {
+        for (int pos = tail.limit() - EOCD_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) == EOCD_SIGNATURE) {
+                int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+                if (pos + EOCD_SIZE + commentLength <= tail.limit()) {
+                    return pos;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer readEntryFallback(Path zip, String name) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 32));
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    content.write(buffer, 0, n);
+                }
+            }
+            return ByteBuffer.wrap(content.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static List<String> readEntryNamesFallback(Path zip) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+        }
+        return names;
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.madlonkay.android;
+
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the overhead of the plugin on synthetic builds (see {@link SyntheticBuild}), comparing the same build with
+ * and without the plugin applied, and fails if it exceeds the configured budgets.
+ * <p>
+ * Two overheads are measured: configuration time (running {@code help}), and the time to run the plugin's code
+ * generation tasks, which is where the locale resolution of every variant happens. Each is the difference of the
+ * median wall-clock times of several builds, after warm-up builds in the same TestKit daemon.
+ * <p>
+ * Settings are read from system properties, which the {@code perfTest} task forwards from project properties:
+ * <ul>
+ * <li>{@code l10nFix.perf.scales}: comma-separated {@code <modules>x<locales>x<files>} build sizes</li>
+ * <li>{@code l10nFix.perf.configBudgetMs}, {@code l10nFix.perf.generateBudgetMs}: the budgets in milliseconds</li>
+ * <li>{@code l10nFix.perf.warmups}, {@code l10nFix.perf.runs}: the number of builds</li>
+ * <li>{@code l10nFix.perf.compileSdkVersion}: an SDK platform installed locally</li>
+ * </ul>
+ * The builds run with {@code --offline}, taking AGP from the plugin's own classpath; the suite is skipped if the
+ * Android SDK can't be found via {@code ANDROID_HOME} or {@code ANDROID_SDK_ROOT}.
+ */
+@RunWith(Parameterized.class)
+public class ConfigurationPerformanceTest {
+
+    private static final String PROPERTY_PREFIX = "l10nFix.perf.";
+    private static final String DEFAULT_SCALES = "5x5x10,20x20x20,50x40x20";
+    private static final long DEFAULT_CONFIG_BUDGET_MS = 1000;
+    private static final long DEFAULT_GENERATE_BUDGET_MS = 2000;
+
+    private static File sdkDir;
+
+    @Parameter(0)
+    public int modules;
+
+    @Parameter(1)
+    public int locales;
+
+    @Parameter(2)
+    public int files;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Parameters(name = "{0} modules, {1} locales, {2} files per locale")
+    public static Collection<Object[]> scales() {
+        List<Object[]> scales = new ArrayList<>();
+        for (String scale : System.getProperty(PROPERTY_PREFIX + "scales", DEFAULT_SCALES).split(",")) {
+            String[] dimensions = scale.trim().split("x");
+            if (dimensions.length != 3) {
+                throw new IllegalArgumentException("Invalid scale: " + scale);
+            }
+            scales.add(Arrays.stream(dimensions).map(Integer::valueOf).toArray());
+        }
+        return scales;
+    }
+
+    @BeforeClass
+    public static void findSdk() {
+        for (String variable : new String[] {"ANDROID_HOME", "ANDROID_SDK_ROOT"}) {
+            String value = System.getenv(variable);
+            if (value != null && new File(value).isDirectory()) {
+                sdkDir = new File(value);
+                break;
+            }
+        }
+        Assume.assumeTrue("Android SDK not found; set ANDROID_HOME", sdkDir != null);
+    }
+
+    @Test
+    public void testConfigurationOverhead() throws IOException {
+        File without = createBuild(false);
+        File with = createBuild(true);
+        long baseline = measure(without, "help");
+        long withPlugin = measure(with, "help");
+        assertWithinBudget("Configuration", baseline, withPlugin,
+                Long.getLong(PROPERTY_PREFIX + "configBudgetMs", DEFAULT_CONFIG_BUDGET_MS));
+    }
+
+    @Test
+    public void testGenerateOverhead() throws IOException {
+        File without = createBuild(false);
+        File with = createBuild(true);
+        long baseline = measure(without, SyntheticBuild.GENERATE_TASK, "--rerun-tasks");
+        long withPlugin = measure(with, SyntheticBuild.GENERATE_TASK, "--rerun-tasks");
+        assertWithinBudget("Code generation", baseline, withPlugin,
+                Long.getLong(PROPERTY_PREFIX + "generateBudgetMs", DEFAULT_GENERATE_BUDGET_MS));
+    }
+
+    private File createBuild(boolean applyPlugin) throws IOException {
+        File dir = tempFolder.newFolder(applyPlugin ? "with-plugin" : "without-plugin");
+        new SyntheticBuild(dir.toPath(), modules, locales, files)
+                .write(sdkDir, System.getProperty(PROPERTY_PREFIX + "compileSdkVersion", "27"), applyPlugin);
+        return dir;
+    }
+
+    /**
+     * Run the build repeatedly.
+     *
+     * @return The median wall-clock time of the measured runs, in milliseconds
+     */
+    private static long measure(File projectDir, String... tasks) {
+        int warmups = Integer.getInteger(PROPERTY_PREFIX + "warmups", 2);
+        int runs = Integer.getInteger(PROPERTY_PREFIX + "runs", 5);
+        List<String> arguments = new ArrayList<>(Arrays.asList(tasks));
+        arguments.add("--offline");
+        arguments.add("--quiet");
+        GradleRunner runner = GradleRunner.create()
+                .withProjectDir(projectDir)
+                .withPluginClasspath()
+                .withArguments(arguments);
+        for (int i = 0; i < warmups; i++) {
+            runner.build();
+        }
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            runner.build();
+            times[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    private void assertWithinBudget(String phase, long baselineMs, long withPluginMs, long budgetMs) {
+        long overhead = withPluginMs - baselineMs;
+        String summary = String.format("%s: %d modules, %d locales, %d files: %d ms without plugin, %d ms with;"
+                + " overhead %d ms (budget %d ms)", phase, modules, locales, files, baselineMs, withPluginMs,
+                overhead, budgetMs);
+        System.out.println(summary);
+        assertTrue(summary, overhead <= budgetMs);
+    }
+}
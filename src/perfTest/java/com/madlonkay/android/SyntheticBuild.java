@@ -0,0 +1,135 @@
+package com.madlonkay.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated multi-module Android build: an app module depending on {@code modules - 1} library modules, each with a
+ * default and {@code locales} localized {@code values} directories holding {@code files} string files apiece.
+ * <p>
+ * AGP and the plugin under test are resolved from the TestKit plugin classpath, so the build needs no repositories
+ * and runs offline; only the Android SDK is needed, at {@code sdkDir}.
+ */
+class SyntheticBuild {
+
+    private static final String[] LOCALES = {
+            "ja", "ko", "de", "fr-rFR", "es-rMX", "b+sr+Latn", "cs", "pt-rBR", "zh-rCN", "zh-rTW", "it", "nl",
+            "ru", "pl", "tr", "sv", "da", "fi", "nb", "b+es+419", "ar", "he", "hi", "th", "vi", "id", "ms", "uk",
+            "el", "hu", "ro", "sk", "bg", "hr", "sl", "lt", "lv", "et", "ca", "fil",
+    };
+    private static final int STRINGS_PER_FILE = 10;
+    private static final String PLUGIN_ID = "com.madlonkay.android-l10n-fix";
+
+    static final int MAX_LOCALES = LOCALES.length;
+
+    /**
+     * A task of the root project depending on all of the plugin's code generation tasks.
+     */
+    static final String GENERATE_TASK = "generateAllL10nFix";
+
+    private final Path root;
+    private final int modules;
+    private final int locales;
+    private final int files;
+
+    SyntheticBuild(Path root, int modules, int locales, int files) {
+        if (modules < 1 || locales > MAX_LOCALES) {
+            throw new IllegalArgumentException("Unsupported scale: " + modules + " modules, " + locales + " locales");
+        }
+        this.root = root;
+        this.modules = modules;
+        this.locales = locales;
+        this.files = files;
+    }
+
+    /**
+     * Write the build.
+     *
+     * @param sdkDir      The Android SDK
+     * @param compileSdk  The compile SDK version, which must be installed in the SDK
+     * @param applyPlugin Whether to apply the plugin under test to each module
+     */
+    void write(File sdkDir, String compileSdk, boolean applyPlugin) throws IOException {
+        List<String> moduleNames = new ArrayList<>();
+        for (int i = 0; i < modules; i++) {
+            moduleNames.add(i == 0 ? "app" : "lib" + i);
+        }
+
+        StringBuilder settings = new StringBuilder();
+        for (String module : moduleNames) {
+            settings.append("include ':").append(module).append("'\n");
+        }
+        write(root.resolve("settings.gradle"), settings);
+        write(root.resolve("build.gradle"), "plugins {\n"
+                + "    id 'com.android.application' apply false\n"
+                + "    id 'com.android.library' apply false\n"
+                + "    id '" + PLUGIN_ID + "' apply false\n"
+                + "}\n\n"
+                // Matches nothing without the plugin, so that both builds can run it
+                + "task " + GENERATE_TASK + " {\n"
+                + "    dependsOn {\n"
+                + "        subprojects.collect { p -> p.tasks.matching { it.name ==~ /generate\\w+L10nFix/ } }\n"
+                + "    }\n"
+                + "}\n");
+        write(root.resolve("gradle.properties"), "org.gradle.jvmargs=-Xmx2g\n");
+        write(root.resolve("local.properties"), "sdk.dir=" + sdkDir.getAbsolutePath().replace("\\", "\\\\") + "\n");
+
+        for (int i = 0; i < modules; i++) {
+            writeModule(moduleNames.get(i), i == 0, i == 0 ? moduleNames.subList(1, modules) : new ArrayList<>(),
+                    compileSdk, applyPlugin);
+        }
+    }
+
+    private void writeModule(String name, boolean isApp, List<String> dependencies, String compileSdk,
+                             boolean applyPlugin) throws IOException {
+        Path moduleDir = root.resolve(name);
+        StringBuilder build = new StringBuilder();
+        build.append("apply plugin: 'com.android.").append(isApp ? "application" : "library").append("'\n\n")
+                .append("android {\n")
+                .append("    compileSdkVersion ").append(compileSdk).append('\n')
+                .append("    defaultConfig {\n")
+                .append("        minSdkVersion 15\n")
+                .append("    }\n")
+                .append("}\n\n")
+                .append("dependencies {\n");
+        for (String dependency : dependencies) {
+            build.append("    implementation project(':").append(dependency).append("')\n");
+        }
+        build.append("}\n");
+        if (applyPlugin) {
+            build.append("\napply plugin: '").append(PLUGIN_ID).append("'\n");
+        }
+        write(moduleDir.resolve("build.gradle"), build);
+
+        String packageName = "com.example.perf." + name;
+        Path main = moduleDir.resolve("src/main");
+        write(main.resolve("AndroidManifest.xml"), "<manifest package=\"" + packageName + "\" />\n");
+        Path res = main.resolve("res");
+        writeStrings(res.resolve("values"), name);
+        for (int i = 0; i < locales; i++) {
+            writeStrings(res.resolve("values-" + LOCALES[i]), name);
+        }
+    }
+
+    private void writeStrings(Path valuesDir, String module) throws IOException {
+        for (int f = 0; f < files; f++) {
+            StringBuilder xml = new StringBuilder("<resources>\n");
+            for (int s = 0; s < STRINGS_PER_FILE; s++) {
+                xml.append("    <string name=\"").append(module).append("_").append(f).append("_").append(s)
+                        .append("\">").append(valuesDir.getFileName()).append(' ').append(s).append("</string>\n");
+            }
+            xml.append("</resources>\n");
+            write(valuesDir.resolve("strings_" + f + ".xml"), xml);
+        }
+    }
+
+    private static void write(Path file, CharSequence content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,84 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import groovy.json.JsonSlurper;
+
+import static org.junit.Assert.*;
+
+public class BuildMetricsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void write() {
+        BuildMetrics metrics = new BuildMetrics(true);
+        metrics.stop(BuildMetrics.PHASE_SCAN, BuildMetrics.SCOPE_BUILD, metrics.start());
+        metrics.stop(BuildMetrics.PHASE_PROJECT_SCAN, ":lib", metrics.start());
+        metrics.stop(BuildMetrics.PHASE_PROJECT_SCAN, ":app", metrics.start());
+        metrics.stop(BuildMetrics.PHASE_PROJECT_SCAN, ":app", metrics.start());
+        metrics.count(BuildMetrics.COUNTER_DIRECTORIES_VISITED, 40);
+        metrics.count(BuildMetrics.COUNTER_DIRECTORIES_VISITED, 2);
+        metrics.count(BuildMetrics.COUNTER_LOCALES_FOUND, 3);
+
+        File report = new File(tempFolder.getRoot(), "l10nFix/metrics.json");
+        Map<String, Object> build = new LinkedHashMap<>();
+        build.put("tasks", Collections.singletonList("help"));
+        build.put("failed", false);
+        metrics.write(report, build);
+
+        Map<String, Object> model = (Map<String, Object>) new JsonSlurper().parse(report);
+        assertEquals(Collections.singletonList("help"), model.get("tasks"));
+        assertEquals(false, model.get("failed"));
+        assertNotNull(model.get("startTime"));
+
+        List<Map<String, Object>> phases = (List<Map<String, Object>>) model.get("phases");
+        assertEquals(Arrays.asList(BuildMetrics.PHASE_PROJECT_SCAN, BuildMetrics.PHASE_SCAN),
+                Arrays.asList(phases.get(0).get("phase"), phases.get(1).get("phase")));
+        Map<String, Object> projectScan = phases.get(0);
+        assertEquals(3, ((Number) projectScan.get("calls")).intValue());
+        assertTrue(((Number) projectScan.get("millis")).doubleValue() >= 0);
+        List<Map<String, Object>> scopes = (List<Map<String, Object>>) projectScan.get("scopes");
+        assertEquals(2, scopes.size());
+        assertEquals(":app", scopes.get(0).get("scope"));
+        assertEquals(2, ((Number) scopes.get(0).get("calls")).intValue());
+        assertEquals(":lib", scopes.get(1).get("scope"));
+        assertEquals(1, ((Number) scopes.get(1).get("calls")).intValue());
+
+        Map<String, Object> counters = (Map<String, Object>) model.get("counters");
+        assertEquals(42, ((Number) counters.get(BuildMetrics.COUNTER_DIRECTORIES_VISITED)).intValue());
+        assertEquals(3, ((Number) counters.get(BuildMetrics.COUNTER_LOCALES_FOUND)).intValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void disabled() {
+        BuildMetrics metrics = new BuildMetrics(false);
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, metrics.start());
+        metrics.stop(BuildMetrics.PHASE_SCAN, BuildMetrics.SCOPE_BUILD, metrics.start());
+        metrics.count(BuildMetrics.COUNTER_LOCALES_FOUND, 3);
+        Map<String, Object> model = metrics.toModel();
+        assertTrue(((List<Object>) model.get("phases")).isEmpty());
+        assertTrue(((Map<String, Object>) model.get("counters")).isEmpty());
+    }
+
+    @Test
+    public void writeFailure() throws Exception {
+        // A report that can't be written is logged, not thrown
+        File blocker = tempFolder.newFile("l10nFix");
+        new BuildMetrics(true).write(new File(blocker, "metrics.json"), Collections.emptyMap());
+        assertFalse(new File(blocker, "metrics.json").exists());
+    }
+}
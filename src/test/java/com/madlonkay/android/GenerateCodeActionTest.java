@@ -0,0 +1,53 @@
+package com.madlonkay.android;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GenerateCodeActionTest {
+
+    @Test
+    public void resolveLikelyScripts() {
+        Map<String, Set<String>> scripts = GenerateCodeAction.resolveLikelyScripts(Arrays.asList(
+                "en-US", "en-GB", "zh-CN", "zh-HK", "zh-TW", "sr-Latn", "ja"));
+        assertEquals(Arrays.asList("en", "ja", "sr", "zh"), Arrays.asList(scripts.keySet().toArray()));
+        assertEquals(Collections.singleton("Latn"), scripts.get("en"));
+        assertEquals(Collections.singleton("Jpan"), scripts.get("ja"));
+        assertEquals(Collections.singleton("Latn"), scripts.get("sr"));
+        assertEquals(Arrays.asList("Hans", "Hant"), Arrays.asList(scripts.get("zh").toArray()));
+    }
+
+    @Test
+    public void resolveLikelyScriptsDefaultScript() {
+        // Serbian is most likely written in Cyrillic
+        assertEquals(Collections.singleton("Cyrl"),
+                GenerateCodeAction.resolveLikelyScripts(Collections.singletonList("sr")).get("sr"));
+        assertEquals(new HashSet<>(Arrays.asList("Cyrl", "Latn")), GenerateCodeAction.resolveLikelyScripts(
+                Arrays.asList("sr", "sr-Latn")).get("sr"));
+    }
+
+    @Test
+    public void resolveLikelyScriptsLegacyLanguages() {
+        String[][] pairs = {{"he", "iw", "Hebr"}, {"yi", "ji", "Hebr"}, {"id", "in", "Latn"}};
+        for (String[] pair : pairs) {
+            for (int i = 0; i < 2; i++) {
+                Map<String, Set<String>> scripts = GenerateCodeAction.resolveLikelyScripts(
+                        Collections.singletonList(pair[i]));
+                assertEquals(pair[i], new HashSet<>(Arrays.asList(pair[0], pair[1])), scripts.keySet());
+                assertEquals(pair[i], Collections.singleton(pair[2]), scripts.get(pair[0]));
+                assertEquals(pair[i], Collections.singleton(pair[2]), scripts.get(pair[1]));
+            }
+        }
+    }
+
+    @Test
+    public void resolveLikelyScriptsEmpty() {
+        assertTrue(GenerateCodeAction.resolveLikelyScripts(Collections.emptyList()).isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+public class LocaleFootprintTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void read() throws IOException {
+        Path root = tempFolder.getRoot().toPath();
+        writeBytes(root.resolve("lib/res/values-ja/values-ja.xml"), 10);
+        writeBytes(root.resolve("app/src/main/res/drawable/icon.png"), 100);
+        writeBytes(root.resolve("app/src/main/res/values-ja/strings.xml"), 20);
+        Path mergerFile = root.resolve("merger.xml");
+        Files.write(mergerFile, readFixture("merger.xml").replace("${root}", root.toString())
+                .getBytes(StandardCharsets.UTF_8));
+
+        List<Map<String, Object>> locales = LocaleFootprint.read(mergerFile).toModel();
+        assertEquals(Arrays.asList(LocaleFootprint.DEFAULT_LOCALE, "ja", "b+sr+Latn", "es-rMX"),
+                valuesOf(locales, "locale"));
+        assertEquals(Arrays.asList(4, 3, 2, 1), valuesOf(locales, "entries"));
+        assertEquals(Arrays.asList(100L, 30L, 0L, 0L), valuesOf(locales, "bytes"));
+
+        // Sources are attributed by their resource set, and sorted by size
+        List<Map<String, Object>> defaultSources = sourcesOf(locales.get(0));
+        assertEquals(Arrays.asList("main", "com.example:lib:1.0"), valuesOf(defaultSources, "source"));
+        assertEquals(Arrays.asList(2, 2), valuesOf(defaultSources, "entries"));
+        assertEquals(Arrays.asList(100L, 0L), valuesOf(defaultSources, "bytes"));
+        List<Map<String, Object>> jaSources = sourcesOf(locales.get(1));
+        assertEquals(Arrays.asList("main", "com.example:lib:1.0"), valuesOf(jaSources, "source"));
+        assertEquals(Arrays.asList(2, 1), valuesOf(jaSources, "entries"));
+        assertEquals(Arrays.asList(20L, 10L), valuesOf(jaSources, "bytes"));
+        assertEquals(Arrays.asList("com.example:lib:1.0"), valuesOf(sourcesOf(locales.get(2)), "source"));
+        assertEquals(Arrays.asList("main"), valuesOf(sourcesOf(locales.get(3)), "source"));
+    }
+
+    @Test
+    public void readMissing() throws IOException {
+        assertNull(LocaleFootprint.read(tempFolder.getRoot().toPath().resolve("merger.xml")));
+        assertNull(LocaleFootprint.read(tempFolder.getRoot().toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void readMalformed() throws IOException {
+        Path mergerFile = tempFolder.newFile("merger.xml").toPath();
+        Files.write(mergerFile, "<merger><dataSet".getBytes(StandardCharsets.UTF_8));
+        LocaleFootprint.read(mergerFile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> sourcesOf(Map<String, Object> locale) {
+        return (List<Map<String, Object>>) locale.get("sources");
+    }
+
+    private static List<Object> valuesOf(List<Map<String, Object>> models, String key) {
+        List<Object> values = new ArrayList<>();
+        for (Map<String, Object> model : models) {
+            values.add(model.get(key));
+        }
+        return values;
+    }
+
+    private static void writeBytes(Path file, int size) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+    }
+
+    private String readFixture(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(name);
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.madlonkay.android;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static com.madlonkay.android.LocaleScannerTest.backdate;
+import static com.madlonkay.android.LocaleScannerTest.touch;
+import static org.junit.Assert.*;
+
+public class LocaleScanCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File cacheFile;
+    private Path project;
+    private Path res;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheFile = new File(tempFolder.getRoot(), "build/l10nFix/locale-scan.cache");
+        project = tempFolder.newFolder("project").toPath();
+        res = project.resolve("src/main/res");
+        touch(res.resolve("values/strings.xml"));
+        touch(res.resolve("values-ja/strings.xml"));
+        touch(res.resolve("values-es-rMX/strings.xml"));
+        backdate(project);
+        LocaleScanCache cache = LocaleScanCache.load(cacheFile, Collections.singleton(project));
+        cache.put(project, LocaleScanner.scan(project, Collections.singleton(project)));
+        cache.save();
+    }
+
+    @Test
+    public void hit() {
+        LocaleScanner.Result result = load().get(project);
+        assertNotNull(result);
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX")), result.getResDirectories().get(res));
+        assertTrue(result.isCurrent());
+    }
+
+    @Test
+    public void addedLocaleDirectory() throws IOException {
+        touch(res.resolve("values-ko/strings.xml"));
+        assertNull(load().get(project));
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX", "ko")),
+                LocaleScanner.scan(project, Collections.singleton(project)).getLocales());
+    }
+
+    @Test
+    public void emptiedLocaleDirectory() throws IOException {
+        Files.delete(res.resolve("values-ja/strings.xml"));
+        assertNull(load().get(project));
+        assertEquals(Collections.singleton("es-rMX"),
+                LocaleScanner.scan(project, Collections.singleton(project)).getLocales());
+    }
+
+    @Test
+    public void changedProjects() throws IOException {
+        Path other = tempFolder.newFolder("other").toPath();
+        assertNull(LocaleScanCache.load(cacheFile, Arrays.asList(project, other)).get(project));
+    }
+
+    @Test
+    public void recentScan() throws IOException {
+        // A scan of directories modified just before it can't be trusted, even if nothing changes afterwards
+        touch(res.resolve("values-ko/strings.xml"));
+        LocaleScanCache cache = load();
+        cache.put(project, LocaleScanner.scan(project, Collections.singleton(project)));
+        cache.save();
+        assertNull(load().get(project));
+    }
+
+    private LocaleScanCache load() {
+        return LocaleScanCache.load(cacheFile, Collections.singleton(project));
+    }
+}
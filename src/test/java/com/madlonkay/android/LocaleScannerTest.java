@@ -0,0 +1,186 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class LocaleScannerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void scan() throws IOException {
+        Path project = tempFolder.newFolder("project").toPath();
+        Path res = project.resolve("src/main/res");
+        touch(res.resolve("values/strings.xml"));
+        touch(res.resolve("values-ja/strings.xml"));
+        touch(res.resolve("values-es-rMX-v21/strings.xml"));
+        Files.createDirectories(res.resolve("values-ko"));
+        touch(res.resolve("layout-de/main.xml"));
+        touch(res.resolve("drawable/res/values-fr/strings.xml"));
+        Path flavorRes = project.resolve("src/free/res");
+        touch(flavorRes.resolve("values-v21/styles.xml"));
+        touch(project.resolve("build/intermediates/res/values-it/values.xml"));
+        touch(project.resolve(".git/res/values-it/values.xml"));
+        Path nested = project.resolve("nested");
+        touch(nested.resolve("src/main/res/values-pt/strings.xml"));
+
+        backdate(project);
+
+        LocaleScanner.Result result = LocaleScanner.scan(project, new HashSet<>(Arrays.asList(project, nested)));
+        assertEquals(new HashSet<>(Arrays.asList(res, flavorRes)), result.getResDirectories().keySet());
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX")), result.getResDirectories().get(res));
+        assertTrue(result.getResDirectories().get(flavorRes).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX")), result.getLocales());
+        // The res directory's other children aren't entered
+        assertFalse(result.getFingerprint().containsKey(res.resolve("drawable")));
+        assertTrue(result.getFingerprint().containsKey(res.resolve("values-ko")));
+        assertFalse(result.getFingerprint().containsKey(nested));
+        assertTrue(result.isCurrent());
+    }
+
+    @Test
+    public void scanWithStrayValuesFiles() throws IOException {
+        Path project = tempFolder.newFolder("project").toPath();
+        touch(project.resolve("values-prod.yaml"));
+        touch(project.resolve("values-es"));
+        Path res = project.resolve("src/main/res");
+        touch(res.resolve("values-ja/strings.xml"));
+        backdate(project);
+
+        // Files named like values directories don't make the project root a res directory
+        LocaleScanner.Result result = LocaleScanner.scan(project, Collections.singleton(project));
+        assertEquals(Collections.singleton(res), result.getResDirectories().keySet());
+        assertEquals(Collections.singleton("ja"), result.getLocales());
+    }
+
+    @Test
+    public void isCurrentWithRecentChanges() throws IOException {
+        Path project = tempFolder.newFolder("project").toPath();
+        touch(project.resolve("res/values-ja/strings.xml"));
+        backdate(project);
+        Files.setLastModifiedTime(project.resolve("res/values-ja"), FileTime.fromMillis(System.currentTimeMillis()));
+
+        // The directory could change again without its timestamp changing
+        LocaleScanner.Result result = LocaleScanner.scan(project, Collections.singleton(project));
+        assertEquals(Collections.singleton("ja"), result.getLocales());
+        assertFalse(result.isCurrent());
+    }
+
+    @Test
+    public void scanMissing() {
+        LocaleScanner.Result result = LocaleScanner.scan(tempFolder.getRoot().toPath().resolve("missing"),
+                Collections.emptySet());
+        assertTrue(result.getResDirectories().isEmpty());
+        assertTrue(result.getFingerprint().isEmpty());
+    }
+
+    @Test
+    public void scanResDirectory() throws IOException {
+        Path res = tempFolder.newFolder("res").toPath();
+        touch(res.resolve("values/strings.xml"));
+        touch(res.resolve("values-b+sr+Latn/strings.xml"));
+        Files.createDirectories(res.resolve("values-ko"));
+        Set<String> locales = new HashSet<>();
+        assertTrue(LocaleScanner.scanResDirectory(res, locales));
+        assertEquals(Collections.singleton("b+sr+Latn"), locales);
+        assertFalse(LocaleScanner.scanResDirectory(res.resolve("values"), locales));
+        assertFalse(LocaleScanner.scanResDirectory(res.resolve("missing"), locales));
+    }
+
+    @Test
+    public void scanArchive() throws IOException {
+        Path aar = writeArchive(tempFolder.getRoot().toPath().resolve("lib.aar"),
+                "AndroidManifest.xml",
+                "classes.jar",
+                "res/values/values.xml",
+                "res/values-ja/values-ja.xml",
+                "res/values-es-rMX-v21/values.xml",
+                "res/values-b+sr+Latn/values.xml",
+                "res/values-v21/values.xml",
+                "res/layout-ko/main.xml",
+                "res/values-de/",
+                "res/values-fr",
+                "assets/res/values-it/values.xml");
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX", "b+sr+Latn")), LocaleScanner.scanArchive(aar));
+    }
+
+    @Test(expected = IOException.class)
+    public void scanInvalidArchive() throws IOException {
+        Path file = tempFolder.newFile("lib.aar").toPath();
+        Files.write(file, new byte[] {1, 2, 3});
+        LocaleScanner.scanArchive(file);
+    }
+
+    @Test
+    public void archiveKey() throws IOException {
+        String sha1 = "0123456789abcdef0123456789abcdef01234567";
+        Path cached = writeArchive(tempFolder.getRoot().toPath().resolve(
+                "caches/modules-2/files-2.1/com.example/lib/1.0/" + sha1 + "/lib-1.0.aar"));
+        assertEquals("sha1:" + sha1 + "/lib-1.0.aar", LocaleScanner.archiveKey(cached));
+
+        // Hex directory names outside the module cache aren't checksums
+        Path hexDir = writeArchive(tempFolder.getRoot().toPath().resolve("libs/cafe/lib.aar"));
+        assertEquals(StringSetCache.fileKey(hexDir), LocaleScanner.archiveKey(hexDir));
+
+        Path local = writeArchive(tempFolder.getRoot().toPath().resolve("files-2.1/lib.aar"));
+        assertEquals(StringSetCache.fileKey(local), LocaleScanner.archiveKey(local));
+    }
+
+    @Test
+    public void moduleArtifactKey() {
+        assertEquals("module:com.example:lib:1.0", LocaleScanner.moduleArtifactKey("com.example", "lib", "1.0", null));
+        assertEquals("module:com.example:lib:1.0:debug",
+                LocaleScanner.moduleArtifactKey("com.example", "lib", "1.0", "debug"));
+        assertNull(LocaleScanner.moduleArtifactKey("com.example", "lib", "1.0-SNAPSHOT", null));
+        assertNull(LocaleScanner.moduleArtifactKey("", "lib", "unspecified", null));
+        assertNull(LocaleScanner.moduleArtifactKey("", "lib", "", null));
+        assertNull(LocaleScanner.moduleArtifactKey("", "lib", null, null));
+    }
+
+    /**
+     * Set the modification time of every directory beneath {@code root} (inclusive) to well before now.
+     */
+    static void backdate(Path root) throws IOException {
+        FileTime time = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    Files.setLastModifiedTime(path, time);
+                }
+            }
+        }
+    }
+
+    static void touch(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+    }
+
+    private static Path writeArchive(Path file, String... names) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (String name : names) {
+                zipOut.putNextEntry(new ZipEntry(name));
+                zipOut.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,162 @@
+package com.madlonkay.android;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.madlonkay.android.LocaleScannerTest.backdate;
+import static com.madlonkay.android.LocaleScannerTest.touch;
+import static org.junit.Assert.*;
+
+public class LocaleWatchIndexTest {
+
+    private static final long EVENT_TIMEOUT_MILLIS = 10_000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path root;
+    private Path app;
+    private Path lib;
+    private Set<Path> projectDirs;
+    private LocaleWatchIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        root = tempFolder.getRoot().toPath().toRealPath();
+        app = root.resolve("app");
+        lib = root.resolve("lib");
+        touch(app.resolve("src/main/res/values/strings.xml"));
+        touch(app.resolve("src/main/res/values-ja/strings.xml"));
+        touch(lib.resolve("src/main/res/values-de/strings.xml"));
+        backdate(root);
+        projectDirs = new HashSet<>(Arrays.asList(root, app, lib));
+        index = LocaleWatchIndex.get(root, projectDirs);
+        Assume.assumeTrue("Native filesystem watching isn't available", index.isWatching());
+        for (Path projectDir : projectDirs) {
+            index.put(projectDir, LocaleScanner.scan(projectDir, projectDirs));
+        }
+        for (Path projectDir : projectDirs) {
+            assertNotNull(index.get(projectDir));
+        }
+    }
+
+    @Test
+    public void get() {
+        assertSame(index, LocaleWatchIndex.get(root, projectDirs));
+        assertEquals(Collections.singleton("ja"), index.get(app).getLocales());
+        assertNotSame(index, LocaleWatchIndex.get(root, Collections.singleton(root)));
+        assertFalse(index.isWatching());
+    }
+
+    @Test
+    public void invalidateOnCreate() throws IOException {
+        touch(app.resolve("src/main/res/values-ko/strings.xml"));
+        awaitInvalidated(app);
+        assertNotNull(index.get(lib));
+    }
+
+    @Test
+    public void invalidateOnDelete() throws IOException {
+        Files.delete(lib.resolve("src/main/res/values-de/strings.xml"));
+        awaitInvalidated(lib);
+        assertNotNull(index.get(app));
+    }
+
+    @Test
+    public void invalidateOnNewDirectory() throws IOException {
+        Files.createDirectories(app.resolve("src/debug"));
+        awaitInvalidated(app);
+    }
+
+    @Test
+    public void ignoreIrrelevantEvents() {
+        index.handleEvents(app, app, Collections.singletonList(
+                event(StandardWatchEventKinds.ENTRY_CREATE, Paths.get("notes.txt"))), true);
+        index.handleEvents(app, app.resolve("src/main/res"), Collections.singletonList(
+                event(StandardWatchEventKinds.ENTRY_DELETE, Paths.get("layout"))), true);
+        assertNotNull(index.get(app));
+
+        index.handleEvents(app, app.resolve("src/main/res/values-ja"), Collections.singletonList(
+                event(StandardWatchEventKinds.ENTRY_DELETE, Paths.get("strings.xml"))), true);
+        assertNull(index.get(app));
+        assertNotNull(index.get(lib));
+    }
+
+    @Test
+    public void invalidateWhenNoLongerWatched() {
+        index.handleEvents(lib, lib, Collections.emptyList(), false);
+        assertNull(index.get(lib));
+        assertNotNull(index.get(app));
+    }
+
+    @Test
+    public void invalidateAllOnOverflow() {
+        index.handleEvents(app, app, Collections.singletonList(event(StandardWatchEventKinds.OVERFLOW, null)), true);
+        for (Path projectDir : projectDirs) {
+            assertNull(index.get(projectDir));
+        }
+        // Results can be indexed again
+        index.put(app, LocaleScanner.scan(app, projectDirs));
+        assertNotNull(index.get(app));
+    }
+
+    @Test
+    public void evictOldest() throws IOException {
+        for (int i = 0; i < LocaleWatchIndex.MAX_INDEXES; i++) {
+            Path otherRoot = tempFolder.newFolder("other" + i).toPath().toRealPath();
+            LocaleWatchIndex.get(otherRoot, Collections.singleton(otherRoot));
+        }
+        assertFalse(index.isWatching());
+        assertNull(index.get(app));
+    }
+
+    private void awaitInvalidated(Path projectDir) {
+        long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            index.refresh();
+            if (index.get(projectDir) == null) {
+                return;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("Not invalidated: " + projectDir);
+    }
+
+    private static <T> WatchEvent<T> event(WatchEvent.Kind<T> kind, T context) {
+        return new WatchEvent<T>() {
+            @Override
+            public Kind<T> kind() {
+                return kind;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public T context() {
+                return context;
+            }
+        };
+    }
+}
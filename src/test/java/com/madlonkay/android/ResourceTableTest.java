@@ -0,0 +1,179 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ResourceTableTest {
+
+    private static final int CHUNK_HEADER = 8;
+    private static final int CONFIG_SIZE = 48;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readLocales() throws IOException {
+        byte[] table = table(
+                config(null, null, null),
+                config("ja", null, null),
+                config("es", "MX", null),
+                config("sr", null, "Latn"),
+                config("zh", "TW", "Hant"),
+                config("fil", null, null),
+                config("es", "419", null),
+                config("ja", null, null));
+        assertEquals(new TreeSet<>(Arrays.asList("ja", "es-rMX", "b+sr+Latn", "b+zh+Hant+TW", "b+fil",
+                "b+es+419")), ResourceTable.readLocales(ByteBuffer.wrap(table)));
+    }
+
+    @Test
+    public void readLocalesOfShortConfig() throws IOException {
+        // Configs from before scripts were added are 36 bytes or smaller
+        byte[] config = Arrays.copyOf(config("de", "AT", null), 32);
+        config[0] = 32;
+        byte[] table = table(config);
+        assertEquals(Collections.singleton("de-rAT"), ResourceTable.readLocales(ByteBuffer.wrap(table)));
+    }
+
+    @Test
+    public void readNoLocales() throws IOException {
+        assertTrue(ResourceTable.readLocales(ByteBuffer.wrap(table(config(null, null, null)))).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncated() throws IOException {
+        byte[] table = table(config("ja", null, null));
+        ResourceTable.readLocales(ByteBuffer.wrap(Arrays.copyOf(table, table.length - 4)));
+    }
+
+    @Test(expected = IOException.class)
+    public void readNotATable() throws IOException {
+        ResourceTable.readLocales(ByteBuffer.wrap(new byte[16]));
+    }
+
+    @Test
+    public void readApkLocales() throws IOException {
+        byte[] table = table(config("ja", null, null), config("sr", null, "Latn"));
+        for (boolean stored : new boolean[] {true, false}) {
+            Path apk = tempFolder.newFile().toPath();
+            try (OutputStream out = Files.newOutputStream(apk); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+                zipOut.setMethod(stored ? ZipOutputStream.STORED : ZipOutputStream.DEFLATED);
+                zipOut.putNextEntry(newEntry("AndroidManifest.xml", new byte[0], stored));
+                zipOut.closeEntry();
+                zipOut.putNextEntry(newEntry(ResourceTable.ENTRY_NAME, table, stored));
+                zipOut.write(table);
+                zipOut.closeEntry();
+            }
+            assertEquals(new TreeSet<>(Arrays.asList("ja", "b+sr+Latn")), ResourceTable.readApkLocales(apk));
+        }
+        Path empty = tempFolder.newFile().toPath();
+        try (OutputStream out = Files.newOutputStream(empty); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            zipOut.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zipOut.closeEntry();
+        }
+        assertTrue(ResourceTable.readApkLocales(empty).isEmpty());
+    }
+
+    private static ZipEntry newEntry(String name, byte[] content, boolean stored) {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        return entry;
+    }
+
+    /**
+     * @return A resource table with a string pool and one package, holding a type spec chunk and a type chunk per
+     * config
+     */
+    private static byte[] table(byte[]... configs) {
+        ByteArrayOutputStream packageChildren = new ByteArrayOutputStream();
+        packageChildren.write(chunk(0x0001, 28, new byte[0]), 0, 28);
+        packageChildren.write(chunk(0x0202, 16, new byte[0]), 0, 16);
+        for (byte[] config : configs) {
+            // ResTable_type: id, flags, reserved, entryCount, entriesStart, then the config
+            ByteBuffer header = ByteBuffer.allocate(12 + config.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.put((byte) 1).put((byte) 0).putShort((short) 0).putInt(1).putInt(20 + config.length + 4);
+            header.put(config);
+            byte[] headerBytes = header.array();
+            byte[] type = chunk(0x0201, CHUNK_HEADER + headerBytes.length, headerBytes, new byte[4]);
+            packageChildren.write(type, 0, type.length);
+        }
+        // ResTable_package: id, 128 UTF-16 name chars, then four string pool offsets and typeIdOffset
+        byte[] packageHeader = new byte[288 - CHUNK_HEADER];
+        byte[] pkg = chunk(0x0200, 288, packageHeader, packageChildren.toByteArray());
+
+        byte[] tableHeader = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(1).array();
+        byte[] stringPool = chunk(0x0001, 28, new byte[20]);
+        ByteArrayOutputStream children = new ByteArrayOutputStream();
+        children.write(stringPool, 0, stringPool.length);
+        children.write(pkg, 0, pkg.length);
+        return chunk(0x0002, 12, tableHeader, children.toByteArray());
+    }
+
+    private static byte[] chunk(int type, int headerSize, byte[] header, byte[]... body) {
+        int size = CHUNK_HEADER + header.length;
+        for (byte[] part : body) {
+            size += part.length;
+        }
+        size = Math.max(size, headerSize);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) type).putShort((short) headerSize).putInt(size).put(header);
+        for (byte[] part : body) {
+            buffer.put(part);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return A {@code ResTable_config} with the specified locale; null parts are unset
+     */
+    private static byte[] config(String language, String region, String script) {
+        ByteBuffer buffer = ByteBuffer.allocate(CONFIG_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, CONFIG_SIZE);
+        packCode(buffer, 8, language, 'a');
+        packCode(buffer, 10, region, '0');
+        if (script != null) {
+            for (int i = 0; i < 4; i++) {
+                buffer.put(36 + i, (byte) script.charAt(i));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void packCode(ByteBuffer buffer, int offset, String code, char base) {
+        if (code == null) {
+            return;
+        }
+        if (code.length() == 2) {
+            buffer.put(offset, (byte) code.charAt(0)).put(offset + 1, (byte) code.charAt(1));
+            return;
+        }
+        int c1 = code.charAt(0) - base;
+        int c2 = code.charAt(1) - base;
+        int c3 = code.charAt(2) - base;
+        buffer.put(offset, (byte) (0x80 | (c3 << 2) | (c2 >> 3)));
+        buffer.put(offset + 1, (byte) (((c2 & 0x07) << 5) | c1));
+    }
+}
@@ -0,0 +1,82 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class StringSetCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        File file = new File(tempFolder.getRoot(), "dir/strings.cache");
+        StringSetCache cache = StringSetCache.load(file);
+        assertNull(cache.get("a"));
+        cache.put("a", new HashSet<>(Arrays.asList("ja", "es-rMX")));
+        cache.put("b", Collections.emptySet());
+        cache.save();
+
+        StringSetCache loaded = StringSetCache.load(file);
+        assertEquals(new HashSet<>(Arrays.asList("ja", "es-rMX")), loaded.get("a"));
+        assertEquals(Collections.emptySet(), loaded.get("b"));
+        assertNull(loaded.get("c"));
+    }
+
+    @Test
+    public void loadInvalid() throws IOException {
+        File file = tempFolder.newFile("strings.cache");
+        Files.write(file.toPath(), new byte[] {0, 0, 0, 1, 0, 0, 0, 5});
+        assertNull(StringSetCache.load(file).get("a"));
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+        assertNull(StringSetCache.load(file).get("a"));
+    }
+
+    @Test
+    public void retainUsedOnly() throws IOException {
+        File file = new File(tempFolder.getRoot(), "strings.cache");
+        StringSetCache cache = StringSetCache.load(file);
+        cache.put("used", Collections.singleton("ja"));
+        cache.put("unused", Collections.singleton("ko"));
+        cache.save();
+
+        StringSetCache pruning = StringSetCache.load(file, true);
+        assertNotNull(pruning.get("used"));
+        pruning.put("new", Collections.singleton("de"));
+        pruning.save();
+
+        StringSetCache loaded = StringSetCache.load(file);
+        assertEquals(Collections.singleton("ja"), loaded.get("used"));
+        assertEquals(Collections.singleton("de"), loaded.get("new"));
+        assertNull(loaded.get("unused"));
+    }
+
+    @Test
+    public void fileKey() throws IOException {
+        Path file = tempFolder.newFile("lib.aar").toPath();
+        Files.write(file, new byte[] {1, 2, 3});
+        String key = StringSetCache.fileKey(file);
+        assertEquals(key, StringSetCache.fileKey(file));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        String touched = StringSetCache.fileKey(file);
+        assertNotEquals(key, touched);
+
+        FileTime time = Files.getLastModifiedTime(file);
+        Files.write(file, new byte[] {1, 2, 3, 4});
+        Files.setLastModifiedTime(file, time);
+        assertNotEquals(touched, StringSetCache.fileKey(file));
+    }
+}
@@ -0,0 +1,101 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TranslationCoverageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void compute() throws IOException {
+        Path main = tempFolder.newFolder("main").toPath();
+        Path flavor = tempFolder.newFolder("flavor").toPath();
+        writeStrings(main, "values", "<string name=\"a\">A</string>"
+                + "<string name=\"b\">B</string>"
+                + "<plurals name=\"c\"><item quantity=\"other\">C</item></plurals>"
+                + "<string name=\"untranslatable\" translatable=\"false\">X</string>");
+        writeStrings(flavor, "values", "<string-array name=\"d\"><item>D</item></string-array>");
+        writeStrings(main, "values-ja", "<string name=\"a\">A</string>"
+                + "<plurals name=\"c\"><item quantity=\"other\">C</item></plurals>"
+                + "<string name=\"untranslatable\">X</string>"
+                + "<string name=\"unknown\">Y</string>");
+        writeStrings(flavor, "values-ja", "<string-array name=\"d\"><item>D</item></string-array>");
+        writeStrings(main, "values-b+sr+Latn-v21", "<string name=\"b\">B</string>");
+        writeStrings(main, "values-v21", "<string name=\"a\">A</string>");
+
+        Map<String, Double> coverage = TranslationCoverage.compute(Arrays.asList(main, flavor), newCache());
+        assertEquals(2, coverage.size());
+        assertEquals(0.75, coverage.get("ja"), 0);
+        assertEquals(0.25, coverage.get("b+sr+Latn"), 0);
+    }
+
+    @Test
+    public void computeWithoutDefaultStrings() throws IOException {
+        Path res = tempFolder.newFolder("res").toPath();
+        writeStrings(res, "values-ja", "<string name=\"a\">A</string>");
+        assertTrue(TranslationCoverage.compute(Collections.singleton(res), newCache()).isEmpty());
+        assertTrue(TranslationCoverage.compute(Collections.singleton(res.resolve("missing")), newCache()).isEmpty());
+    }
+
+    @Test
+    public void computeFromCache() throws IOException {
+        Path res = tempFolder.newFolder("res").toPath();
+        writeStrings(res, "values", "<string name=\"a\">A</string><string name=\"b\">B</string>");
+        Path ja = writeStrings(res, "values-ja", "<string name=\"a\">A</string>");
+        StringSetCache cache = newCache();
+        cache.put(StringSetCache.fileKey(ja), new HashSet<>(Arrays.asList("a", "b")));
+
+        // The file itself isn't parsed while its size and modification time match
+        assertEquals(1.0, TranslationCoverage.compute(Collections.singleton(res), cache).get("ja"), 0);
+
+        writeStrings(res, "values-ja", "<string name=\"a\">A</string> ");
+        Files.setLastModifiedTime(ja, FileTime.fromMillis(
+                Files.getLastModifiedTime(ja).toMillis() + 2000));
+        assertEquals(0.5, TranslationCoverage.compute(Collections.singleton(res), cache).get("ja"), 0);
+    }
+
+    @Test
+    public void findBelow() {
+        Map<String, Double> coverage = new HashMap<>();
+        coverage.put("ja", 7 / 10.0);
+        coverage.put("ko", 0.8);
+        coverage.put("de", 0.7999);
+        coverage.put("fr", 0.0);
+        coverage.put("es", 1.0);
+
+        assertEquals(new HashSet<>(Arrays.asList("ja", "de", "fr")), TranslationCoverage.findBelow(coverage, 80));
+        assertEquals(Collections.singleton("fr"), TranslationCoverage.findBelow(coverage, 70));
+        assertEquals(new HashSet<>(Arrays.asList("ja", "ko", "de", "fr")),
+                TranslationCoverage.findBelow(coverage, 100));
+        assertTrue(TranslationCoverage.findBelow(coverage, 0).isEmpty());
+        assertTrue(TranslationCoverage.findBelow(Collections.emptyMap(), 80).isEmpty());
+    }
+
+    private StringSetCache newCache() {
+        return StringSetCache.load(new File(tempFolder.getRoot(), "names.cache"));
+    }
+
+    private static Path writeStrings(Path resDir, String valuesDir, String resources) throws IOException {
+        Path file = resDir.resolve(valuesDir).resolve("strings.xml");
+        Files.createDirectories(file.getParent());
+        Files.write(file, ("<resources>" + resources + "</resources>").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -14,9 +14,13 @@ public class UtilTest {
     public void isLocaleQualifier() {
         assertTrue(Util.isLocaleQualifier("en"));
         assertTrue(Util.isLocaleQualifier("es-rMX"));
+        assertTrue(Util.isLocaleQualifier("fil"));
         assertTrue(Util.isLocaleQualifier("b+sr+Latn"));
+        assertTrue(Util.isLocaleQualifier("b+es+419"));
         assertFalse(Util.isLocaleQualifier(""));
-        assertFalse(Util.isLocaleQualifier("foo"));
+        assertFalse(Util.isLocaleQualifier("fooo"));
+        assertFalse(Util.isLocaleQualifier("car"));
+        assertFalse(Util.isLocaleQualifier("en-rUS-land"));
         assertFalse(Util.isLocaleQualifier("v21"));
         assertFalse(Util.isLocaleQualifier("hdpi"));
     }
@@ -31,11 +35,55 @@ public class UtilTest {
         assertEquals("b+sr+Latn", Util.resolveLocale(new File("/Users/me/project/res/values-b+sr+Latn/strings.xml")));
     }
 
+    @Test
+    public void isValuesDirectory() {
+        assertTrue(Util.isValuesDirectory("values"));
+        assertTrue(Util.isValuesDirectory("values-ja"));
+        assertTrue(Util.isValuesDirectory("values-v21"));
+        assertFalse(Util.isValuesDirectory("valuesfoo"));
+        assertFalse(Util.isValuesDirectory("values-"));
+        assertFalse(Util.isValuesDirectory("values-prod.yaml"));
+        assertFalse(Util.isValuesDirectory("layout"));
+    }
+
+    @Test
+    public void resolveLocaleDirectory() {
+        assertNull(Util.resolveLocaleDirectory("values"));
+        assertNull(Util.resolveLocaleDirectory("values-v16"));
+        assertNull(Util.resolveLocaleDirectory("layout-ja"));
+        assertNull(Util.resolveLocaleDirectory("values-ja-foo"));
+        assertNull(Util.resolveLocaleDirectory("values-v21-ja"));
+        assertNull(Util.resolveLocaleDirectory("values-ja-"));
+        assertEquals("ja", Util.resolveLocaleDirectory("values-ja-v21"));
+        assertEquals("en-rUS", Util.resolveLocaleDirectory("values-en-rUS-land"));
+        assertEquals("en", Util.resolveLocaleDirectory("values-mcc310-en"));
+        assertEquals("es", Util.resolveLocaleDirectory("values-mcc310-mnc4-es"));
+        assertEquals("es", Util.resolveLocaleDirectory("values-mcc310-mnc004-es"));
+        assertEquals("b+sr+Latn", Util.resolveLocaleDirectory("values-b+sr+Latn-sw600dp-xxhdpi-v26"));
+        assertEquals("ja", Util.resolveLocaleDirectory("values-ja"));
+        assertEquals("es-rMX", Util.resolveLocaleDirectory("values-es-rMX"));
+        assertEquals("b+sr+Latn", Util.resolveLocaleDirectory("values-b+sr+Latn"));
+    }
+
+    @Test
+    public void resolveLocaleQualifiers() {
+        assertNull(Util.resolveLocaleQualifiers(""));
+        assertNull(Util.resolveLocaleQualifiers("v21"));
+        assertNull(Util.resolveLocaleQualifiers("land-hdpi"));
+        assertEquals("ja", Util.resolveLocaleQualifiers("ja"));
+        assertEquals("ja", Util.resolveLocaleQualifiers("ja-v21"));
+        assertEquals("es-rMX", Util.resolveLocaleQualifiers("es-rMX"));
+        assertEquals("es-rMX", Util.resolveLocaleQualifiers("es-rMX-land-v21"));
+        assertEquals("b+sr+Latn", Util.resolveLocaleQualifiers("b+sr+Latn-hdpi"));
+    }
+
     @Test
     public void convertToBcp47() {
         assertEquals("ja", Util.toBcp47("ja"));
         assertEquals("es-MX", Util.toBcp47("es-rMX"));
         assertEquals("sr-Latn", Util.toBcp47("b+sr+Latn"));
+        assertEquals("es-419", Util.toBcp47("b+es+419"));
+        assertEquals("fil", Util.toBcp47("fil"));
     }
 
     @Test
@@ -0,0 +1,31 @@
+package com.madlonkay.android;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VerifyApkLocalesTaskTest {
+
+    @Test
+    public void isSupported() {
+        Set<String> supported = new HashSet<>(Arrays.asList("ja", "es-MX", "sr-Latn", "fr-FR"));
+        assertTrue(VerifyApkLocalesTask.isSupported("ja", supported));
+        assertTrue(VerifyApkLocalesTask.isSupported("es-MX", supported));
+        // Regional resources of a supported language
+        assertTrue(VerifyApkLocalesTask.isSupported("ja-JP", supported));
+        // Language-only fallbacks kept by aapt for regional or script resConfigs
+        assertTrue(VerifyApkLocalesTask.isSupported("es", supported));
+        assertTrue(VerifyApkLocalesTask.isSupported("sr", supported));
+        assertTrue(VerifyApkLocalesTask.isSupported("fr", supported));
+        assertFalse(VerifyApkLocalesTask.isSupported("es-ES", supported));
+        assertFalse(VerifyApkLocalesTask.isSupported("sr-Cyrl", supported));
+        assertFalse(VerifyApkLocalesTask.isSupported("de", supported));
+        assertFalse(VerifyApkLocalesTask.isSupported("e", supported));
+        assertFalse(VerifyApkLocalesTask.isSupported("es", Collections.singleton("est-EE")));
+    }
+}
@@ -0,0 +1,107 @@
+package com.madlonkay.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipDirectoryTest {
+
+    private static final byte[] CONTENT = "Hello, hello, hello, hello, zip".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readStored() throws IOException {
+        Path zip = writeZip(ZipEntry.STORED, null, "res/values/values.xml", "resources.arsc");
+        assertEquals(Arrays.asList("res/values/values.xml", "resources.arsc"), ZipDirectory.readEntryNames(zip));
+        assertContent(ZipDirectory.readEntry(zip, "resources.arsc"));
+        assertNull(ZipDirectory.readEntry(zip, "missing"));
+    }
+
+    @Test
+    public void readDeflated() throws IOException {
+        Path zip = writeZip(ZipEntry.DEFLATED, null, "res/values/values.xml", "resources.arsc");
+        assertEquals(Arrays.asList("res/values/values.xml", "resources.arsc"), ZipDirectory.readEntryNames(zip));
+        assertContent(ZipDirectory.readEntry(zip, "resources.arsc"));
+        assertNull(ZipDirectory.readEntry(zip, "missing"));
+    }
+
+    @Test
+    public void readWithComment() throws IOException {
+        // A comment containing the end-of-central-directory signature mustn't be mistaken for the record
+        String comment = "PK\u0005\u0006 not the end " + new String(new char[1000]).replace('\0', 'x');
+        Path zip = writeZip(ZipEntry.DEFLATED, comment, "a", "b");
+        assertEquals(Arrays.asList("a", "b"), ZipDirectory.readEntryNames(zip));
+        assertContent(ZipDirectory.readEntry(zip, "b"));
+    }
+
+    @Test
+    public void readZip64() throws IOException {
+        // More than 0xFFFE entries requires Zip64, which is read by the ZipFile fallback
+        String[] names = new String[0x10000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Integer.toString(i);
+        }
+        Path zip = writeZip(ZipEntry.DEFLATED, null, names);
+        List<String> entryNames = ZipDirectory.readEntryNames(zip);
+        assertEquals(names.length, entryNames.size());
+        assertEquals("65535", entryNames.get(names.length - 1));
+        assertContent(ZipDirectory.readEntry(zip, "65535"));
+        assertNull(ZipDirectory.readEntry(zip, "missing"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalid() throws IOException {
+        Path file = tempFolder.newFile("invalid.zip").toPath();
+        Files.write(file, CONTENT);
+        ZipDirectory.readEntryNames(file);
+    }
+
+    private Path writeZip(int method, String comment, String... names) throws IOException {
+        Path zip = tempFolder.newFile().toPath();
+        CRC32 crc = new CRC32();
+        crc.update(CONTENT);
+        try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (String name : names) {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    entry.setSize(CONTENT.length);
+                    entry.setCompressedSize(CONTENT.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zipOut.putNextEntry(entry);
+                zipOut.write(CONTENT);
+                zipOut.closeEntry();
+            }
+            if (comment != null) {
+                zipOut.setComment(comment);
+            }
+        }
+        return zip;
+    }
+
+    private static void assertContent(ByteBuffer buffer) {
+        assertNotNull(buffer);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+        assertArrayEquals(CONTENT, content);
+    }
+}